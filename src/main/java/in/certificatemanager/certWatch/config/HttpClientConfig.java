@@ -0,0 +1,95 @@
+package in.certificatemanager.certWatch.config;
+
+import in.certificatemanager.certWatch.util.CircuitBreaker;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.httpcomponents.hc5.PoolingHttpClientConnectionManagerMetricsBinder;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.web.client.RestTemplate;
+
+import java.time.Duration;
+
+// Outbound HTTP clients. Every target gets its own pooled connection manager, so connections and TLS sessions are
+// reused across calls, a slow target can only tie up its own pool, and timeouts are set per target.
+// Pool usage is published as httpcomponents.httpclient.pool.* metrics tagged with the client name.
+@Configuration
+public class HttpClientConfig {
+
+    @Bean(destroyMethod = "close")
+    public CloseableHttpClient emailHttpClient(MeterRegistry meterRegistry,
+                                               @Value("${certwatch.http.email.max-connections:20}") int maxConnections,
+                                               @Value("${certwatch.http.email.connect-timeout:PT3S}") Duration connectTimeout,
+                                               @Value("${certwatch.http.email.response-timeout:PT15S}") Duration responseTimeout) {
+        return pooledClient("email", meterRegistry, maxConnections, connectTimeout, responseTimeout);
+    }
+
+    @Bean(destroyMethod = "close")
+    public CloseableHttpClient healthCheckHttpClient(MeterRegistry meterRegistry,
+                                                     @Value("${certwatch.http.health-check.max-connections:2}") int maxConnections,
+                                                     @Value("${certwatch.http.health-check.connect-timeout:PT3S}") Duration connectTimeout,
+                                                     @Value("${certwatch.http.health-check.response-timeout:PT10S}") Duration responseTimeout) {
+        return pooledClient("health-check", meterRegistry, maxConnections, connectTimeout, responseTimeout);
+    }
+
+    // Built through RestTemplateBuilder so that http.client.requests metrics are recorded as well
+    @Bean
+    public RestTemplate emailRestTemplate(RestTemplateBuilder builder, CloseableHttpClient emailHttpClient) {
+        return builder.requestFactory(() -> new HttpComponentsClientHttpRequestFactory(emailHttpClient)).build();
+    }
+
+    @Bean
+    public RestTemplate healthCheckRestTemplate(RestTemplateBuilder builder, CloseableHttpClient healthCheckHttpClient) {
+        return builder.requestFactory(() -> new HttpComponentsClientHttpRequestFactory(healthCheckHttpClient)).build();
+    }
+
+    // Stops calling the email provider while it keeps failing, queued emails are retried by the outbox later
+    @Bean
+    public CircuitBreaker emailCircuitBreaker(MeterRegistry meterRegistry,
+                                              @Value("${certwatch.http.email.circuit.failure-threshold:5}") int failureThreshold,
+                                              @Value("${certwatch.http.email.circuit.open-duration:PT30S}") Duration openDuration) {
+        CircuitBreaker circuitBreaker = new CircuitBreaker(failureThreshold, openDuration);
+        Gauge.builder("certwatch.email.circuit.open", circuitBreaker,
+                        breaker -> breaker.getState() == CircuitBreaker.State.CLOSED ? 0 : 1)
+                .description("1 while calls to the email provider are being rejected")
+                .register(meterRegistry);
+        return circuitBreaker;
+    }
+
+    private static CloseableHttpClient pooledClient(String name, MeterRegistry meterRegistry, int maxConnections,
+                                                    Duration connectTimeout, Duration responseTimeout) {
+        PoolingHttpClientConnectionManager connectionManager = PoolingHttpClientConnectionManagerBuilder.create()
+                .setMaxConnTotal(maxConnections)
+                .setMaxConnPerRoute(maxConnections)
+                .setDefaultConnectionConfig(ConnectionConfig.custom()
+                        .setConnectTimeout(Timeout.of(connectTimeout))
+                        .setSocketTimeout(Timeout.of(responseTimeout))
+                        // Connections idle for longer may have been closed by the server, they are checked before reuse
+                        .setValidateAfterInactivity(TimeValue.ofSeconds(10))
+                        .setTimeToLive(TimeValue.ofMinutes(5))
+                        .build())
+                .build();
+        new PoolingHttpClientConnectionManagerMetricsBinder(connectionManager, name).bindTo(meterRegistry);
+
+        return HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(RequestConfig.custom()
+                        // Waiting for a free pooled connection is bounded too, this is the bulkhead
+                        .setConnectionRequestTimeout(Timeout.of(connectTimeout))
+                        .setResponseTimeout(Timeout.of(responseTimeout))
+                        .build())
+                .evictIdleConnections(TimeValue.ofMinutes(1))
+                .build();
+    }
+}
@@ -0,0 +1,91 @@
+package in.certificatemanager.certWatch.config;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.persistence.EntityManagerFactory;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.dialect.sequence.SequenceSupport;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import in.certificatemanager.certWatch.service.JobLockService;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Identifiers come from pooled sequences: Hibernate reserves ALLOCATION_SIZE ids per round trip and, unlike with
+// IDENTITY columns, knows the id before the insert, so inserts are sent in JDBC batches. PostgreSQL has native
+// sequences, on MySQL Hibernate emulates every sequence with a one row table.
+// Tables that were filled through IDENTITY columns start out ahead of their new sequences, so at startup every
+// sequence is moved past the largest id of its table before anything is inserted. This only changes a sequence
+// on the first start after the switch, later starts find them in line.
+// The alignment runs under the id-sequences job lock, so instances that start together align one after the other and
+// none of them restarts a sequence another one already draws ids from. Deploy order for the switch: stop every instance
+// that still inserts through IDENTITY columns before the first instance of this version starts, since ids they insert
+// after the alignment are not seen by it and collide with the sequence. Rolling the switch out instance by instance
+// is not supported, later releases can be rolled out as usual.
+@Slf4j
+@Component
+public class IdSequences {
+
+    public static final int ALLOCATION_SIZE = 50;
+
+    private static final String LOCK_NAME = "id-sequences";
+    // The alignment takes a few statements, the lease only matters if an instance dies while holding it
+    private static final Duration LOCK_AT_MOST_FOR = Duration.ofMinutes(1);
+    private static final Duration MAX_WAIT = LOCK_AT_MOST_FOR.multipliedBy(2);
+    private static final Duration RETRY_INTERVAL = Duration.ofMillis(500);
+
+    private static final Map<String, String> TABLES_BY_SEQUENCE = new LinkedHashMap<>();
+
+    static {
+        TABLES_BY_SEQUENCE.put("seq_profiles", "tbl_profiles");
+        TABLES_BY_SEQUENCE.put("seq_categories", "tbl_categories");
+        TABLES_BY_SEQUENCE.put("seq_certificates", "tbl_certificates");
+        TABLES_BY_SEQUENCE.put("seq_email_outbox", "tbl_email_outbox");
+        TABLES_BY_SEQUENCE.put("seq_reminder_ledger", "tbl_reminder_ledger");
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+    private final JobLockService jobLockService;
+    private final SequenceSupport sequenceSupport;
+
+    // Depends on the EntityManagerFactory, so the schema update has created the sequences by now
+    public IdSequences(JdbcTemplate jdbcTemplate, JobLockService jobLockService, EntityManagerFactory entityManagerFactory) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.jobLockService = jobLockService;
+        this.sequenceSupport = entityManagerFactory.unwrap(SessionFactoryImplementor.class)
+                .getJdbcServices().getDialect().getSequenceSupport();
+    }
+
+    // Waits while another instance aligns the sequences, the startup fails if the lock cannot be had within MAX_WAIT
+    @PostConstruct
+    public void alignSequences() throws InterruptedException {
+        LocalDateTime giveUpAt = LocalDateTime.now().plus(MAX_WAIT);
+        while (!jobLockService.runLocked(LOCK_NAME, LOCK_AT_MOST_FOR, Duration.ZERO,
+                () -> TABLES_BY_SEQUENCE.forEach(this::align))) {
+            if (LocalDateTime.now().isAfter(giveUpAt)) {
+                throw new IllegalStateException("Unable to align the id sequences, lock " + LOCK_NAME
+                        + " was held by another instance for more than " + MAX_WAIT);
+            }
+            Thread.sleep(RETRY_INTERVAL.toMillis());
+        }
+    }
+
+    // With the pooled optimizer the value read from a sequence is the highest id of the reserved block,
+    // the block of value v is (v - ALLOCATION_SIZE, v], so the value must be at least ALLOCATION_SIZE past the largest id
+    private void align(String sequence, String table) {
+        Long maxId = jdbcTemplate.queryForObject("select coalesce(max(id), 0) from " + table, Long.class);
+        if (maxId == 0) return;
+        long required = maxId + ALLOCATION_SIZE;
+        if (sequenceSupport.supportsSequences()) {
+            Long next = jdbcTemplate.queryForObject(sequenceSupport.getSequenceNextValString(sequence), Long.class);
+            if (next >= required) return;
+            jdbcTemplate.execute("alter sequence " + sequence + " restart with " + required);
+        } else if (jdbcTemplate.update("update " + sequence + " set next_val = ? where next_val < ?", required, required) == 0) {
+            return;
+        }
+        log.info("Sequence {} moved past the largest id {} of {}", sequence, maxId, table);
+    }
+}
@@ -1,11 +1,15 @@
 package in.certificatemanager.certWatch.controller;
 
 import in.certificatemanager.certWatch.dto.CategoryDTO;
+import in.certificatemanager.certWatch.dto.ReminderSettingsDTO;
 import in.certificatemanager.certWatch.service.CategoryService;
+import in.certificatemanager.certWatch.service.ProfileService;
+import in.certificatemanager.certWatch.util.ETagUtil;
 import lombok.RequiredArgsConstructor;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 import java.util.List;
 
 @RestController
@@ -14,6 +18,7 @@ import java.util.List;
 public class CategoryController {
 
     private final CategoryService categoryService;
+    private final ProfileService profileService;
 
     // Saving a new category
     @PostMapping
@@ -25,9 +30,10 @@ public class CategoryController {
     // To get all the categories for the current user,
     // if no categories exists then empty array will be returned
     @GetMapping
-    public ResponseEntity<List<CategoryDTO>> getCategories(){
-        List<CategoryDTO> categories = categoryService.getCategoriesForCurrentUser();
-        return ResponseEntity.ok(categories);
+    public ResponseEntity<List<CategoryDTO>> getCategories(WebRequest request){
+        long version = profileService.getCategoriesVersion();
+        return ETagUtil.conditionalGet(request, categoryService.getCategoryListETag(version),
+                () -> categoryService.getCategoriesForCurrentUser(version));
     }
 
     @PutMapping("/id/{categoryId}")
@@ -36,6 +42,11 @@ public class CategoryController {
         return ResponseEntity.ok(updatedCategory);
     }
 
+    // Reminder thresholds of the category's certificates, blank to use the thresholds of the profile
+    @PutMapping("/id/{categoryId}/reminders")
+    public ResponseEntity<CategoryDTO> updateReminderDays(@PathVariable Long categoryId, @RequestBody ReminderSettingsDTO settings){
+        return ResponseEntity.ok(categoryService.updateReminderDays(categoryId, settings));
+    }
 
 //    @DeleteMapping("/id/{categoryId}")
 //    public ResponseEntity<String> deleteCategory(@PathVariable Long categoryId){
@@ -1,14 +1,27 @@
 package in.certificatemanager.certWatch.controller;
 
 import in.certificatemanager.certWatch.customExceptions.ResourceNotFoundException;
+import in.certificatemanager.certWatch.dto.BulkCertificateRequestDTO;
+import in.certificatemanager.certWatch.dto.BulkCertificateResultDTO;
 import in.certificatemanager.certWatch.dto.CategoryDTO;
+import in.certificatemanager.certWatch.dto.CertificateChangesDTO;
 import in.certificatemanager.certWatch.dto.CertificateDTO;
+import in.certificatemanager.certWatch.dto.CertificateImportResultDTO;
+import in.certificatemanager.certWatch.dto.CertificateQueryDTO;
+import in.certificatemanager.certWatch.dto.CertificateSliceDTO;
 import in.certificatemanager.certWatch.dto.DetailsDTO;
+import in.certificatemanager.certWatch.dto.SpreadsheetImportResultDTO;
+import in.certificatemanager.certWatch.service.CertificateBulkService;
+import in.certificatemanager.certWatch.service.CertificateImportService;
 import in.certificatemanager.certWatch.service.CertificateService;
+import in.certificatemanager.certWatch.service.ProfileService;
+import in.certificatemanager.certWatch.service.SpreadsheetImportService;
+import in.certificatemanager.certWatch.util.ETagUtil;
 import lombok.RequiredArgsConstructor;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
@@ -20,6 +33,10 @@ import java.util.List;
 public class CertificateController {
 
     private final CertificateService certificateService;
+    private final CertificateImportService certificateImportService;
+    private final SpreadsheetImportService spreadsheetImportService;
+    private final CertificateBulkService certificateBulkService;
+    private final ProfileService profileService;
 
     @PostMapping
     public ResponseEntity<CertificateDTO> addCertificate(@RequestBody CertificateDTO cert){
@@ -37,22 +54,56 @@ public class CertificateController {
         }
     }
 
+    // Bulk import of a ZIP archive of PEM/CRT files or of a multi-certificate PEM bundle
+    @PostMapping("/import")
+    public ResponseEntity<CertificateImportResultDTO> importCertificates(@RequestParam(value="file") MultipartFile file,
+                                                                         @RequestParam Long categoryId) throws IOException {
+        CertificateImportResultDTO result = certificateImportService.importCertificates(file, categoryId);
+        return ResponseEntity.ok(result);
+    }
+
+    // Import of an XLSX or CSV sheet in the layout of the exports, rows without a category go into categoryId
+    @PostMapping("/import/spreadsheet")
+    public ResponseEntity<SpreadsheetImportResultDTO> importSpreadsheet(@RequestParam(value="file") MultipartFile file,
+                                                                        @RequestParam(required = false) Long categoryId) throws IOException {
+        SpreadsheetImportResultDTO result = spreadsheetImportService.importSpreadsheet(file, categoryId);
+        return ResponseEntity.ok(result);
+    }
+
     @GetMapping("/all")
-    public ResponseEntity<List<CertificateDTO>> getCertificates(){
-        List<CertificateDTO> certs = certificateService.getAllCertificatesForCurrentUser();
-        return ResponseEntity.ok(certs);
+    public ResponseEntity<List<CertificateDTO>> getCertificates(WebRequest request){
+        long version = profileService.getCertificatesVersion();
+        return ETagUtil.conditionalGet(request, certificateService.getCertificateListETag("all", version),
+                () -> certificateService.getAllCertificatesForCurrentUser(version));
+    }
+
+    // Filtered listing returned in slices of bounded size, follow nextCursor to get the next slice
+    @GetMapping("/page")
+    public ResponseEntity<CertificateSliceDTO> getCertificateSlice(@ModelAttribute CertificateQueryDTO query){
+        CertificateSliceDTO slice = certificateService.getCertificateSlice(query);
+        return ResponseEntity.ok(slice);
+    }
+
+    // Delta sync: certificates created, updated or deleted since the cursor of the previous call
+    @GetMapping("/changes")
+    public ResponseEntity<CertificateChangesDTO> getChanges(@RequestParam(required = false) String cursor,
+                                                            @RequestParam(required = false) Integer limit){
+        CertificateChangesDTO changes = certificateService.getChangesSince(cursor, limit);
+        return ResponseEntity.ok(changes);
     }
 
     @GetMapping("/unarchived")
-    public ResponseEntity<List<CertificateDTO>> getUnarchivedCertificates(){
-        List<CertificateDTO> certs = certificateService.getUnarchivedCertificatesForCurrentUser();
-        return ResponseEntity.ok(certs);
+    public ResponseEntity<List<CertificateDTO>> getUnarchivedCertificates(WebRequest request){
+        long version = profileService.getCertificatesVersion();
+        return ETagUtil.conditionalGet(request, certificateService.getCertificateListETag("unarchived", version),
+                () -> certificateService.getUnarchivedCertificatesForCurrentUser(version));
     }
 
     @GetMapping("/archived")
-    public ResponseEntity<List<CertificateDTO>> getArchivedCertificates(){
-        List<CertificateDTO> certificates = certificateService.getArchivedCertificatesForCurrentUser();
-        return ResponseEntity.ok(certificates);
+    public ResponseEntity<List<CertificateDTO>> getArchivedCertificates(WebRequest request){
+        long version = profileService.getCertificatesVersion();
+        return ETagUtil.conditionalGet(request, certificateService.getCertificateListETag("archived", version),
+                () -> certificateService.getArchivedCertificatesForCurrentUser(version));
     }
 
     @PutMapping("/id/{certificateId}")
@@ -67,4 +118,10 @@ public class CertificateController {
         return ResponseEntity.noContent().build();
     }
 
+    // Archives, unarchives, recategorises or deletes the certificates selected by ids and/or filters
+    @PostMapping("/bulk")
+    public ResponseEntity<BulkCertificateResultDTO> bulkUpdate(@RequestBody BulkCertificateRequestDTO request){
+        return ResponseEntity.ok(certificateBulkService.apply(request));
+    }
+
 }
@@ -1,21 +1,31 @@
 package in.certificatemanager.certWatch.controller;
 
+import in.certificatemanager.certWatch.customExceptions.InvalidRequestParameterException;
+import in.certificatemanager.certWatch.dto.ReportJobDTO;
 import in.certificatemanager.certWatch.entity.ProfileEntity;
-import in.certificatemanager.certWatch.service.CertificateService;
-import in.certificatemanager.certWatch.service.EmailService;
 import in.certificatemanager.certWatch.service.ExcelService;
 import in.certificatemanager.certWatch.service.ProfileService;
-import jakarta.mail.MessagingException;
+import in.certificatemanager.certWatch.service.ReportJobService;
 import jakarta.servlet.http.HttpServletResponse;
 import lombok.RequiredArgsConstructor;
-import org.springframework.context.annotation.Profile;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.net.URI;
+import java.util.zip.GZIPOutputStream;
 
 @RestController
 @RequestMapping("/excel")
@@ -23,29 +33,101 @@ import java.io.IOException;
 public class ExcelController {
 
      private final ExcelService excelService;
-     private final CertificateService certificateService;
-     private final EmailService emailService;
+     private final ReportJobService reportJobService;
      private final ProfileService profileService;
 
      @GetMapping("/download")
      public void downloadExcel(HttpServletResponse response) throws IOException {
         response.setContentType("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet");
         response.setHeader("Content-Disposition", "attachment; filename=certificates.xlsx");
-        excelService.writeCertificatesToExcel(response.getOutputStream(), certificateService.getAllCertificatesForCurrentUser());
+        excelService.writeCertificatesToExcel(response.getOutputStream(), profileService.getCurrentProfileId());
      }
 
+     // CSV or NDJSON streamed from the database as it is read, gzip compressed if the client accepts it
+     @GetMapping("/export")
+     public void exportCertificates(@RequestParam String format,
+                                    @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+                                    HttpServletResponse response) throws IOException {
+         ReportJobService.Format exportFormat = ReportJobService.Format.of(format);
+         if (exportFormat == ReportJobService.Format.XLSX) {
+             throw new InvalidRequestParameterException("Use /excel/download or a report job for xlsx.");
+         }
+         Long profileId = profileService.getCurrentProfileId();
+         response.setContentType(exportFormat.getContentType());
+         response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=certificates." + exportFormat.getExtension());
+         response.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+         if (!acceptsGzip(acceptEncoding)) {
+             reportJobService.write(exportFormat, response.getOutputStream(), profileId);
+             return;
+         }
+         response.setHeader(HttpHeaders.CONTENT_ENCODING, "gzip");
+         GZIPOutputStream gzip = new GZIPOutputStream(response.getOutputStream(), 8192);
+         reportJobService.write(exportFormat, gzip, profileId);
+         gzip.finish();
+     }
+
+     // True if Accept-Encoding lists gzip, or * without gzip, with a q-value above 0. x-gzip is not the gzip token.
+     private static boolean acceptsGzip(String acceptEncoding) {
+         if (acceptEncoding == null) return false;
+         Boolean wildcard = null;
+         for (String coding : acceptEncoding.split(",")) {
+             String[] parts = coding.split(";");
+             String name = parts[0].trim();
+             boolean accepted = qValue(parts) > 0;
+             if (name.equalsIgnoreCase("gzip")) return accepted;
+             if (name.equals("*")) wildcard = accepted;
+         }
+         return Boolean.TRUE.equals(wildcard);
+     }
+
+     // q parameter of one Accept-Encoding entry, 1 if it has none and 0 if it cannot be read
+     private static double qValue(String[] parts) {
+         for (int i = 1; i < parts.length; i++) {
+             String parameter = parts[i].trim();
+             if (parameter.length() > 2 && parameter.regionMatches(true, 0, "q=", 0, 2)) {
+                 try {
+                     return Double.parseDouble(parameter.substring(2).trim());
+                 } catch (NumberFormatException e) {
+                     return 0;
+                 }
+             }
+         }
+         return 1;
+     }
+
+     // The report is generated by a report job and queued in the outbox once it is ready
      @GetMapping("/email")
-     public ResponseEntity<String> emailExcel() throws IOException, MessagingException {
-        ProfileEntity profile = profileService.getCurrentProfile();
-         ByteArrayOutputStream baos = new ByteArrayOutputStream();
-         excelService.writeCertificatesToExcel(baos, certificateService.getAllCertificatesForCurrentUser());
-
-         emailService.sendEmailWithAttachment(profile.getEmail(),
-                  "Your certificate details report",
-                 "Please find your attached report with all the certificate details",
-                 baos.toByteArray(),
-                 "certificate_report.xlsx");
-
-         return ResponseEntity.ok("Email sent successfully.");
+     public ResponseEntity<String> emailExcel() {
+         ProfileEntity profile = profileService.getCurrentProfile();
+         reportJobService.submit(profile.getId(), ReportJobService.Format.XLSX, profile.getEmail());
+         return ResponseEntity.accepted().body("Report is being generated, it will be emailed once it is ready.");
+     }
+
+     // Starts generating a report and returns the job right away, poll it until it is DONE and then download the file
+     @PostMapping("/jobs")
+     public ResponseEntity<ReportJobDTO> submitReportJob(@RequestParam(defaultValue = "xlsx") String format,
+                                                         @RequestParam(defaultValue = "false") boolean email) {
+         ProfileEntity profile = profileService.getCurrentProfile();
+         ReportJobDTO job = reportJobService.submit(profile.getId(), ReportJobService.Format.of(format),
+                 email ? profile.getEmail() : null);
+         URI location = ServletUriComponentsBuilder.fromCurrentRequest().replaceQuery(null)
+                 .path("/{jobId}").buildAndExpand(job.getId()).toUri();
+         return ResponseEntity.accepted().location(location).body(job);
+     }
+
+     @GetMapping("/jobs/{jobId}")
+     public ResponseEntity<ReportJobDTO> getReportJob(@PathVariable String jobId) {
+         return ResponseEntity.ok(reportJobService.getJob(profileService.getCurrentProfileId(), jobId));
+     }
+
+     @GetMapping("/jobs/{jobId}/file")
+     public ResponseEntity<Resource> downloadReport(@PathVariable String jobId) {
+         ReportJobService.ReportFile file = reportJobService.getFile(profileService.getCurrentProfileId(), jobId);
+         return ResponseEntity.ok()
+                 .contentType(MediaType.parseMediaType(file.format().getContentType()))
+                 .contentLength(file.size())
+                 .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment()
+                         .filename("certificates." + file.format().getExtension()).build().toString())
+                 .body(new FileSystemResource(file.path()));
      }
 }
@@ -2,6 +2,7 @@ package in.certificatemanager.certWatch.controller;
 
 import in.certificatemanager.certWatch.dto.AuthDTO;
 import in.certificatemanager.certWatch.dto.ProfileDTO;
+import in.certificatemanager.certWatch.dto.ReminderSettingsDTO;
 import in.certificatemanager.certWatch.service.ProfileService;
 import in.certificatemanager.certWatch.util.JwtUtil;
 import lombok.RequiredArgsConstructor;
@@ -74,4 +75,10 @@ public class ProfileController {
         return ResponseEntity.ok(profile);
     }
 
+    // Reminder thresholds of the current profile, blank to go back to the defaults
+    @PutMapping("/profile/reminders")
+    public ResponseEntity<ProfileDTO> updateReminderDays(@RequestBody ReminderSettingsDTO settings){
+        return ResponseEntity.ok(profileService.updateReminderDays(settings));
+    }
+
 }
@@ -0,0 +1,7 @@
+package in.certificatemanager.certWatch.customExceptions;
+
+public class InvalidRequestParameterException extends RuntimeException{
+    public InvalidRequestParameterException(String message) {
+        super(message);
+    }
+}
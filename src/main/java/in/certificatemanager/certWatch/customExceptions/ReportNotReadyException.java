@@ -0,0 +1,7 @@
+package in.certificatemanager.certWatch.customExceptions;
+
+public class ReportNotReadyException extends RuntimeException {
+    public ReportNotReadyException(String message) {
+        super(message);
+    }
+}
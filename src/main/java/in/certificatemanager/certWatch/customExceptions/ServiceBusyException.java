@@ -0,0 +1,7 @@
+package in.certificatemanager.certWatch.customExceptions;
+
+public class ServiceBusyException extends RuntimeException {
+    public ServiceBusyException(String message) {
+        super(message);
+    }
+}
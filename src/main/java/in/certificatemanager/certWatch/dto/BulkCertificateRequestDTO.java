@@ -0,0 +1,26 @@
+package in.certificatemanager.certWatch.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+// One operation applied to many certificates, selected by id and/or by the filters
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class BulkCertificateRequestDTO {
+
+    // ARCHIVE, UNARCHIVE, RECATEGORISE or DELETE
+    private String action;
+
+    private List<Long> ids;
+    private Long categoryId;
+    private Boolean archived;
+
+    // Only for RECATEGORISE
+    private Long targetCategoryId;
+}
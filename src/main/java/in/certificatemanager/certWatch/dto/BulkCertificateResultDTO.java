@@ -0,0 +1,17 @@
+package in.certificatemanager.certWatch.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class BulkCertificateResultDTO {
+
+    private String action;
+    // Certificates that were changed, those already in the requested state are not counted
+    private int affected;
+}
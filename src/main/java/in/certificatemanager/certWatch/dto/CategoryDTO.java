@@ -17,6 +17,7 @@ public class CategoryDTO {
     private Long profileId;
     private String name;
     private String icon;
+    private String reminderDays;
     private LocalDateTime createdAt;
     private LocalDateTime updatedAt;
 }
@@ -0,0 +1,24 @@
+package in.certificatemanager.certWatch.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class CertificateChangesDTO {
+
+    // Certificates created or updated after the cursor, apply them before the deletions
+    private List<CertificateDTO> upserted;
+    // Ids of certificates deleted after the cursor
+    private List<Long> deleted;
+    // Always set, pass it as the cursor parameter of the next sync
+    private String nextCursor;
+    // More changes are waiting, request again right away with nextCursor
+    private boolean hasMore;
+}
@@ -30,4 +30,5 @@ public class CertificateDTO {
     private String subjectAltName;
     private String comments;
     private String signatureAlgorithm;
+    private String fingerprint;
 }
@@ -0,0 +1,22 @@
+package in.certificatemanager.certWatch.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class CertificateImportEntryDTO {
+
+    public enum Status { IMPORTED, DUPLICATE, FAILED }
+
+    // File name inside the archive (or position inside the bundle) the certificate was read from
+    private String source;
+    private Status status;
+    private Long certificateId;
+    private String subject;
+    private String message;
+}
@@ -0,0 +1,22 @@
+package in.certificatemanager.certWatch.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class CertificateImportResultDTO {
+
+    private Long categoryId;
+    private int total;
+    private int imported;
+    private int duplicates;
+    private int failed;
+    private List<CertificateImportEntryDTO> entries;
+}
@@ -0,0 +1,35 @@
+package in.certificatemanager.certWatch.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
+
+import java.time.LocalDate;
+
+// Filters, sort and position of a certificate listing, bound from the query parameters
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class CertificateQueryDTO {
+
+    private Long categoryId;
+    private Boolean archived;
+    private String issuer;
+    private String algorithm;
+    @DateTimeFormat(iso = DateTimeFormat.ISO.DATE)
+    private LocalDate expiryFrom;
+    @DateTimeFormat(iso = DateTimeFormat.ISO.DATE)
+    private LocalDate expiryTo;
+    // Substring of the subject or of the subject alternative names
+    private String search;
+
+    // expiryDate or id
+    private String sort;
+    // asc or desc
+    private String direction;
+    private Integer limit;
+    private String cursor;
+}
@@ -0,0 +1,20 @@
+package in.certificatemanager.certWatch.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class CertificateSliceDTO {
+
+    private List<CertificateDTO> items;
+    // Pass it as the cursor parameter to get the next slice, null when there are no more certificates
+    private String nextCursor;
+    private boolean hasMore;
+}
@@ -20,4 +20,5 @@ public class DetailsDTO {
     private int version;
     private String signatureAlgorithm;
     private String subjectAltName;
+    private String fingerprint;
 }
@@ -0,0 +1,21 @@
+package in.certificatemanager.certWatch.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class EmailDTO {
+
+    private String to;
+    private String subject;
+    private String body;
+
+    // Optional attachment, sent when both are set
+    private byte[] attachment;
+    private String attachmentName;
+}
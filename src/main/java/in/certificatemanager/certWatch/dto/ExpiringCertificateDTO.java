@@ -0,0 +1,25 @@
+package in.certificatemanager.certWatch.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+
+// A certificate due for a reminder together with the profile that owns it
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ExpiringCertificateDTO {
+
+    private Long profileId;
+    private String email;
+    private String fullName;
+    private Long certificateId;
+    private String subject;
+    private LocalDate expiryDate;
+    // Thresholds of the category, or of the profile when the category has none
+    private String reminderDays;
+}
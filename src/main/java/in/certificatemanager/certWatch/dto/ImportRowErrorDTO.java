@@ -0,0 +1,17 @@
+package in.certificatemanager.certWatch.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ImportRowErrorDTO {
+
+    // Row number as shown by spreadsheet programs, the header is row 1
+    private int row;
+    private String message;
+}
@@ -0,0 +1,16 @@
+package in.certificatemanager.certWatch.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Reminder thresholds of a profile or a category, e.g. "90,60,30"
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ReminderSettingsDTO {
+
+    private String reminderDays;
+}
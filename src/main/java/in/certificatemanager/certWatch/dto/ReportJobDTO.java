@@ -0,0 +1,25 @@
+package in.certificatemanager.certWatch.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ReportJobDTO {
+
+    private String id;
+    private String format;
+    // QUEUED, RUNNING, DONE or FAILED
+    private String status;
+    // Size of the finished file in bytes
+    private Long size;
+    private LocalDateTime createdAt;
+    private LocalDateTime finishedAt;
+    private String error;
+}
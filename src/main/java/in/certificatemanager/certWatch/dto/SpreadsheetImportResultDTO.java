@@ -0,0 +1,22 @@
+package in.certificatemanager.certWatch.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class SpreadsheetImportResultDTO {
+
+    // Rows read after the header, blank rows are not counted
+    private int total;
+    private int imported;
+    private int failed;
+    // Only the rows that were not imported
+    private List<ImportRowErrorDTO> errors;
+}
@@ -1,5 +1,6 @@
 package in.certificatemanager.certWatch.entity;
 
+import in.certificatemanager.certWatch.config.IdSequences;
 import jakarta.persistence.*;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
@@ -19,7 +20,8 @@ import java.time.LocalDateTime;
 public class CategoryEntity {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "seq_categories")
+    @SequenceGenerator(name = "seq_categories", sequenceName = "seq_categories", allocationSize = IdSequences.ALLOCATION_SIZE)
     private Long id;
 
     private String name;
@@ -33,6 +35,10 @@ public class CategoryEntity {
 
     private String icon;
 
+    // Reminder thresholds of the category's certificates, null uses the thresholds of the profile
+    @Column(length = 64)
+    private String reminderDays;
+
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "profile_id", nullable = false)
     private ProfileEntity profile;
@@ -1,5 +1,6 @@
 package in.certificatemanager.certWatch.entity;
 
+import in.certificatemanager.certWatch.config.IdSequences;
 import jakarta.persistence.*;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
@@ -12,14 +13,26 @@ import java.time.LocalDate;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name="tbl_certificates")
+@Table(name="tbl_certificates", indexes = {
+        @Index(name = "uk_certificates_profile_fingerprint", columnList = "profile_id, fingerprint", unique = true),
+        // Keyset listing, see CertificateSpecifications
+        @Index(name = "idx_certificates_profile_expiry", columnList = "profile_id, expiry_date, id"),
+        @Index(name = "idx_certificates_profile_archived_expiry", columnList = "profile_id, is_archived, expiry_date, id"),
+        @Index(name = "idx_certificates_profile_category_expiry", columnList = "profile_id, category_id, expiry_date, id"),
+        // Delta sync, see CertificateService.getChangesSince
+        @Index(name = "idx_certificates_profile_updated", columnList = "profile_id, updated_at, id"),
+        // Daily expiry reminder, see NotificationService
+        @Index(name = "idx_certificates_archived_next_notify", columnList = "is_archived, next_notify_on")
+})
 @Data
 @AllArgsConstructor
 @NoArgsConstructor
 @Builder
 public class CertificateEntity {
+    // Pooled sequence, see IdSequences. Unlike IDENTITY it lets Hibernate batch the inserts.
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "seq_certificates")
+    @SequenceGenerator(name = "seq_certificates", sequenceName = "seq_certificates", allocationSize = IdSequences.ALLOCATION_SIZE)
     private Long id;
 
     private String subject;
@@ -35,6 +48,10 @@ public class CertificateEntity {
     private String subjectAltName;
     private String comments;
 
+    // SHA-256 of the DER encoding, null for certificates that were entered manually
+    @Column(length = 64)
+    private String fingerprint;
+
     @Column(updatable = false)
     @CreationTimestamp
     private LocalDateTime createdAt;
@@ -45,11 +62,17 @@ public class CertificateEntity {
     @Builder.Default
     private Boolean isArchived = false;
 
+    // Day of the next expiry reminder, see ReminderSchedule. Not part of the DTO, so it is
+    // rescheduled with bulk updates that leave updatedAt untouched.
+    private LocalDate nextNotifyOn;
+
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "profile_id", nullable = false)
     private ProfileEntity profile;
 
-    @ManyToOne
+    // Lazy so that listing certificates does not issue one select per category,
+    // reading category.getId() on the proxy does not initialize it
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "category_id", nullable = false)
     private CategoryEntity category;
 }
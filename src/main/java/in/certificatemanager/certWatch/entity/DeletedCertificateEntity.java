@@ -6,16 +6,23 @@ import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import org.hibernate.annotations.CreationTimestamp;
+import org.springframework.data.domain.Persistable;
+
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name="tbl_deleted_certificates")
+@Table(name="tbl_deleted_certificates", indexes = {
+        @Index(name = "idx_deleted_certificates_profile_fingerprint", columnList = "profile_id, fingerprint"),
+        // Delta sync, see CertificateService.getChangesSince
+        @Index(name = "idx_deleted_certificates_profile_deleted", columnList = "profile_id, deleted_at, id")
+})
 @Data
 @AllArgsConstructor
 @NoArgsConstructor
 @Builder
-public class DeletedCertificateEntity {
+public class DeletedCertificateEntity implements Persistable<Long> {
+    // Id of the deleted certificate
     @Id
     private Long id;
 
@@ -32,6 +39,9 @@ public class DeletedCertificateEntity {
     private String subjectAltName;
     private String comments;
 
+    @Column(length = 64)
+    private String fingerprint;
+
     @Column(updatable = false)
     @CreationTimestamp
     private LocalDateTime deletedAt;
@@ -40,5 +50,20 @@ public class DeletedCertificateEntity {
     @JoinColumn(name = "profile_id", nullable = false)
     private ProfileEntity profile;
 
+    // The id is assigned, without this save() would select the row first to tell an insert from an update
+    @Transient
+    @Builder.Default
+    private boolean inserted = false;
+
+    @Override
+    public boolean isNew() {
+        return !inserted;
+    }
+
+    @PostPersist
+    @PostLoad
+    void markInserted() {
+        inserted = true;
+    }
 }
 
@@ -0,0 +1,67 @@
+package in.certificatemanager.certWatch.entity;
+
+import in.certificatemanager.certWatch.config.IdSequences;
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.CreationTimestamp;
+import org.hibernate.annotations.JdbcTypeCode;
+import org.hibernate.type.SqlTypes;
+
+import java.time.LocalDateTime;
+
+// An email waiting to be handed over to the email provider, written in the same transaction as the change
+// that triggered it and sent later by EmailOutboxService
+@Entity
+@Table(name = "tbl_email_outbox", indexes = {
+        @Index(name = "idx_email_outbox_status_next_attempt", columnList = "status, next_attempt_at")
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class EmailOutboxEntity {
+
+    public enum Status { PENDING, SENT, DEAD }
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "seq_email_outbox")
+    @SequenceGenerator(name = "seq_email_outbox", sequenceName = "seq_email_outbox", allocationSize = IdSequences.ALLOCATION_SIZE)
+    private Long id;
+
+    // Emails with the same key are only queued once
+    @Column(unique = true)
+    private String dedupKey;
+
+    private String recipient;
+    private String subject;
+
+    // LONG32VARCHAR maps to longtext on MySQL and text on PostgreSQL
+    @JdbcTypeCode(SqlTypes.LONG32VARCHAR)
+    private String body;
+
+    private String attachmentName;
+
+    @JdbcTypeCode(SqlTypes.LONG32VARBINARY)
+    private byte[] attachment;
+
+    @Enumerated(EnumType.STRING)
+    @Column(length = 16)
+    private Status status;
+
+    private int attempts;
+
+    // Also acts as the lease of a claimed email, a worker that dies while sending leaves it due again later
+    private LocalDateTime nextAttemptAt;
+
+    @Column(length = 1000)
+    private String lastError;
+
+    @Column(updatable = false)
+    @CreationTimestamp
+    private LocalDateTime createdAt;
+
+    private LocalDateTime sentAt;
+}
@@ -0,0 +1,30 @@
+package in.certificatemanager.certWatch.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+// Lease on a scheduled job shared by all instances, see JobLockService.
+// A node holds the lock while lockedUntil is in the future.
+@Entity
+@Table(name = "tbl_job_locks")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class JobLockEntity {
+
+    @Id
+    @Column(length = 64)
+    private String name;
+
+    @Column(length = 128)
+    private String lockedBy;
+
+    private LocalDateTime lockedAt;
+    private LocalDateTime lockedUntil;
+}
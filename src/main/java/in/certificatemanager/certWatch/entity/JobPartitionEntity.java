@@ -0,0 +1,53 @@
+package in.certificatemanager.certWatch.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+// A profile id range of one run of a partitioned job, claimed and processed by one instance at a time.
+// See JobPartitionService.
+@Entity
+@Table(name = "tbl_job_partitions", uniqueConstraints = {
+        @UniqueConstraint(name = "uk_job_partitions_run", columnNames = {"job_name", "run_date", "partition_no"})
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class JobPartitionEntity {
+
+    public enum Status { PENDING, RUNNING, DONE }
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(length = 64, nullable = false)
+    private String jobName;
+
+    @Column(nullable = false)
+    private LocalDate runDate;
+
+    private int partitionNo;
+
+    // Profiles with fromProfileId < id <= toProfileId
+    private Long fromProfileId;
+    private Long toProfileId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(length = 16, nullable = false)
+    private Status status;
+
+    @Column(length = 128)
+    private String claimedBy;
+
+    // A running partition whose lease ran out is claimed again, its node is assumed to be gone
+    private LocalDateTime leaseUntil;
+
+    private LocalDateTime completedAt;
+}
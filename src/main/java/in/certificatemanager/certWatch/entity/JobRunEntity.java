@@ -0,0 +1,55 @@
+package in.certificatemanager.certWatch.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+// One run of a job for a day, or of one partition of it. The checkpoint is written in the same transaction as the
+// work of each chunk, so an interrupted run continues after the last committed chunk. See JobRunService.
+@Entity
+@Table(name = "tbl_job_runs", uniqueConstraints = {
+        @UniqueConstraint(name = "uk_job_runs_run", columnNames = {"job_name", "run_date", "scope"})
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class JobRunEntity {
+
+    public enum Status { RUNNING, COMPLETED }
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(length = 64, nullable = false)
+    private String jobName;
+
+    @Column(nullable = false)
+    private LocalDate runDate;
+
+    // "all", or the partition of a partitioned run
+    @Column(length = 32, nullable = false)
+    private String scope;
+
+    @Enumerated(EnumType.STRING)
+    @Column(length = 16, nullable = false)
+    private Status status;
+
+    // Last profile whose work is committed
+    private Long lastProfileId;
+
+    private int processed;
+
+    @Column(length = 128)
+    private String lastNode;
+
+    private LocalDateTime startedAt;
+    private LocalDateTime checkpointAt;
+    private LocalDateTime finishedAt;
+}
@@ -1,10 +1,12 @@
 package in.certificatemanager.certWatch.entity;
 
+import in.certificatemanager.certWatch.config.IdSequences;
 import jakarta.persistence.*;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import org.hibernate.annotations.ColumnDefault;
 import org.hibernate.annotations.CreationTimestamp;
 import org.hibernate.annotations.UpdateTimestamp;
 
@@ -20,7 +22,8 @@ import java.time.LocalDateTime;
 public class ProfileEntity {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "seq_profiles")
+    @SequenceGenerator(name = "seq_profiles", sequenceName = "seq_profiles", allocationSize = IdSequences.ALLOCATION_SIZE)
     private Long id;
     private String fullName;
     @Column(unique = true)
@@ -34,6 +37,20 @@ public class ProfileEntity {
     private Boolean isActive;
     private String activationToken;
 
+    // Reminder thresholds such as "90,60,30", null uses ReminderSchedule.DEFAULT_THRESHOLDS
+    @Column(length = 64)
+    private String reminderDays;
+
+    // Incremented on every change of the profile's certificates or categories, used as ETag of the lists.
+    // Only written by ProfileRepository's increment queries, so saving a loaded profile never overwrites them.
+    @ColumnDefault("0")
+    @Column(nullable = false, insertable = false, updatable = false)
+    private Long certificatesVersion;
+
+    @ColumnDefault("0")
+    @Column(nullable = false, insertable = false, updatable = false)
+    private Long categoriesVersion;
+
     @PrePersist
     public void prePersist(){
         if(this.isActive == null) isActive = false;
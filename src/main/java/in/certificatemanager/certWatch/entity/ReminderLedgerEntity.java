@@ -0,0 +1,42 @@
+package in.certificatemanager.certWatch.entity;
+
+import in.certificatemanager.certWatch.config.IdSequences;
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.CreationTimestamp;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+// Reminders queued per profile, day and threshold, a threshold is reminded at most once a day
+@Entity
+@Table(name = "tbl_reminder_ledger", uniqueConstraints = {
+        @UniqueConstraint(name = "uk_reminder_ledger_profile_date_threshold", columnNames = {"profile_id", "reminder_date", "threshold"})
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ReminderLedgerEntity {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "seq_reminder_ledger")
+    @SequenceGenerator(name = "seq_reminder_ledger", sequenceName = "seq_reminder_ledger", allocationSize = IdSequences.ALLOCATION_SIZE)
+    private Long id;
+
+    // Kept as a plain column, the ledger outlives deleted profiles and is only looked up by it
+    @Column(name = "profile_id", nullable = false)
+    private Long profileId;
+
+    @Column(nullable = false)
+    private LocalDate reminderDate;
+
+    private int threshold;
+
+    @Column(updatable = false)
+    @CreationTimestamp
+    private LocalDateTime createdAt;
+}
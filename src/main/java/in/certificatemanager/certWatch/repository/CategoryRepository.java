@@ -1,7 +1,10 @@
 package in.certificatemanager.certWatch.repository;
 
+import in.certificatemanager.certWatch.dto.CategoryDTO;
 import in.certificatemanager.certWatch.entity.CategoryEntity;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 import java.util.Optional;
 import java.util.List;
@@ -11,12 +14,24 @@ public interface CategoryRepository extends JpaRepository<CategoryEntity, Long>
     // select * from tbl_categories where profile_id = ?1
     List<CategoryEntity> findByProfileId(Long profileId);
 
+    // Same rows selected straight into CategoryDTO, the arguments follow the field order of CategoryDTO
+    @Query("select new in.certificatemanager.certWatch.dto.CategoryDTO(c.id, c.profile.id, c.name, c.icon, c.reminderDays, c.createdAt, c.updatedAt) "
+            + "from CategoryEntity c where c.profile.id = :profileId")
+    List<CategoryDTO> findDTOsByProfileId(@Param("profileId") Long profileId);
+
     // select * from tbl_categories where id =?1 and profile_id = ?2
-    Optional<CategoryEntity> findByIdAndProfileId(Long id, Long profileId);
+    // The profile filters below are written out so that they use the profile_id column, derived queries join tbl_profiles
+    @Query("select c from CategoryEntity c where c.id = :id and c.profile.id = :profileId")
+    Optional<CategoryEntity> findByIdAndProfileId(@Param("id") Long id, @Param("profileId") Long profileId);
 
 //    // select * from tbl_categories where type =?1 and profile_id = ?2
 //    List<CategoryEntity> findByTypeAndProfileId(String type, Long profileId);
 
-    Boolean existsByNameAndProfileId(String name, Long profileId);
+    // Thresholds that apply to the certificates of the category, null when neither the category nor the profile has any
+    @Query("select coalesce(c.reminderDays, p.reminderDays) from CategoryEntity c join c.profile p where c.id = :id")
+    String findEffectiveReminderDays(@Param("id") Long id);
+
+    @Query("select count(c) > 0 from CategoryEntity c where c.name = :name and c.profile.id = :profileId")
+    Boolean existsByNameAndProfileId(@Param("name") String name, @Param("profileId") Long profileId);
     // 1 person cannot create multiple categories with the same name, hence this will check if category already exists.
 }
\ No newline at end of file
@@ -1,27 +1,173 @@
 package in.certificatemanager.certWatch.repository;
 
+import in.certificatemanager.certWatch.dto.CertificateDTO;
+import in.certificatemanager.certWatch.dto.ExpiringCertificateDTO;
+import in.certificatemanager.certWatch.entity.CategoryEntity;
 import in.certificatemanager.certWatch.entity.CertificateEntity;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
-public interface CertificateRepository extends JpaRepository<CertificateEntity, Long> {
+public interface CertificateRepository extends JpaRepository<CertificateEntity, Long>, JpaSpecificationExecutor<CertificateEntity> {
+
+    // Selects the columns straight into CertificateDTO in one statement, without managed entities.
+    // The arguments follow the field order of CertificateDTO (its all-args constructor),
+    // c.category.id is read from the foreign key column so tbl_categories is not joined.
+    String CERTIFICATE_DTO_SELECT = "select new in.certificatemanager.certWatch.dto.CertificateDTO("
+            + "c.id, c.category.id, c.createdAt, c.updatedAt, c.isArchived, c.issuedDate, c.expiryDate, "
+            + "c.serialNumber, c.version, c.subject, c.issuedBy, c.subjectAltName, c.comments, "
+            + "c.signatureAlgorithm, c.fingerprint) from CertificateEntity c ";
+
+    // What is needed to compute the next reminder of a certificate
+    interface ReminderView {
+        Long getId();
+        LocalDate getExpiryDate();
+        String getReminderDays();
+    }
+
+    // Only the id and the fingerprint are selected, used for duplicate detection
+    interface FingerprintView {
+        Long getId();
+        String getFingerprint();
+    }
 
 //    List<CertificateEntity> findByProfileIdOrderByDateDesc(Long profileId);
 //
 //    List<CertificateEntity> findTop5ByProfileIdOrderByDateDesc(Long profileID);
 //
-    List<CertificateEntity> findByProfileId(Long profileId);
+    @Query(CERTIFICATE_DTO_SELECT + "where c.profile.id = :profileId")
+    List<CertificateDTO> findDTOsByProfileId(@Param("profileId") Long profileId);
 
-    List<CertificateEntity> findByProfileIdAndIsArchivedTrue(Long profileId);
+    // Read through a database cursor for exports, the caller must consume the stream inside a transaction and close it.
+    // The fetch size keeps only a window of rows in the JDBC driver (MySQL needs useCursorFetch=true for this).
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"))
+    @Query(CERTIFICATE_DTO_SELECT + "where c.profile.id = :profileId order by c.id")
+    Stream<CertificateDTO> streamDTOsByProfileId(@Param("profileId") Long profileId);
 
-    List<CertificateEntity> findByProfileIdAndIsArchivedFalse(Long profileId);
+    @Query(CERTIFICATE_DTO_SELECT + "where c.profile.id = :profileId and c.isArchived = :archived")
+    List<CertificateDTO> findDTOsByProfileIdAndArchived(@Param("profileId") Long profileId, @Param("archived") boolean archived);
 
-    Optional<CertificateEntity> findByIdAndProfileId(Long certificateId, Long profileId);
+    // The profile filters below are written out so that they use the profile_id column, derived queries join tbl_profiles
+    @Query("select c from CertificateEntity c where c.id = :certificateId and c.profile.id = :profileId")
+    Optional<CertificateEntity> findByIdAndProfileId(@Param("certificateId") Long certificateId, @Param("profileId") Long profileId);
 
     Optional<List<CertificateEntity>> findByProfileIdAndCategoryId(Long profileId,Long categoryId);
 
-    boolean existsByProfileIdAndCategoryId(Long profileId, Long categoryId);
+    @Query("select count(c) > 0 from CertificateEntity c where c.profile.id = :profileId and c.category.id = :categoryId")
+    boolean existsByProfileIdAndCategoryId(@Param("profileId") Long profileId, @Param("categoryId") Long categoryId);
+
+    // select * from tbl_certificates where profile_id = ?1 and fingerprint = ?2 (served by the unique index)
+    @Query("select c from CertificateEntity c where c.profile.id = :profileId and c.fingerprint = :fingerprint")
+    Optional<CertificateEntity> findByProfileIdAndFingerprint(@Param("profileId") Long profileId, @Param("fingerprint") String fingerprint);
+
+    // select id, fingerprint from tbl_certificates where profile_id = ?1 and fingerprint in (?2)
+    @Query("select c.id as id, c.fingerprint as fingerprint from CertificateEntity c "
+            + "where c.profile.id = :profileId and c.fingerprint in :fingerprints")
+    List<FingerprintView> findByProfileIdAndFingerprintIn(@Param("profileId") Long profileId, @Param("fingerprints") Collection<String> fingerprints);
+
+    // Certificates changed after (afterUpdatedAt, afterId) up to upTo, in keyset order for the delta sync.
+    // Served by the (profile_id, updated_at, id) index.
+    @Query(CERTIFICATE_DTO_SELECT + "where c.profile.id = :profileId and c.updatedAt <= :upTo "
+            + "and (c.updatedAt > :afterUpdatedAt or (c.updatedAt = :afterUpdatedAt and c.id > :afterId)) "
+            + "order by c.updatedAt, c.id")
+    List<CertificateDTO> findChangedSince(@Param("profileId") Long profileId,
+                                          @Param("afterUpdatedAt") LocalDateTime afterUpdatedAt,
+                                          @Param("afterId") Long afterId,
+                                          @Param("upTo") LocalDateTime upTo,
+                                          Limit limit);
+
+    // Unarchived certificates whose next reminder is due, ordered by owner then id and read in keyset chunks
+    // after (lastProfileId, lastCertificateId) up to the profile toProfileId. Served by the (is_archived, next_notify_on) index.
+    @Query("select new in.certificatemanager.certWatch.dto.ExpiringCertificateDTO("
+            + "p.id, p.email, p.fullName, c.id, c.subject, c.expiryDate, coalesce(cat.reminderDays, p.reminderDays)) "
+            + "from CertificateEntity c join c.profile p join c.category cat "
+            + "where c.isArchived = false and c.nextNotifyOn <= :today "
+            + "and (p.id > :lastProfileId or (p.id = :lastProfileId and c.id > :lastCertificateId)) "
+            + "and p.id <= :toProfileId order by p.id, c.id")
+    List<ExpiringCertificateDTO> findDueForReminder(@Param("today") LocalDate today,
+                                                    @Param("lastProfileId") Long lastProfileId,
+                                                    @Param("lastCertificateId") Long lastCertificateId,
+                                                    @Param("toProfileId") Long toProfileId,
+                                                    Limit limit);
+
+    // Unarchived certificates of a profile, or of one of its categories, after lastId with the thresholds that apply to them
+    @Query("select c.id as id, c.expiryDate as expiryDate, coalesce(cat.reminderDays, p.reminderDays) as reminderDays "
+            + "from CertificateEntity c join c.profile p join c.category cat "
+            + "where p.id = :profileId and (:categoryId is null or cat.id = :categoryId) "
+            + "and c.isArchived = false and c.id > :lastId order by c.id")
+    List<ReminderView> findForRescheduling(@Param("profileId") Long profileId,
+                                           @Param("categoryId") Long categoryId,
+                                           @Param("lastId") Long lastId,
+                                           Limit limit);
+
+    // Certificates stored before reminders were precomputed
+    @Query("select c.id as id, c.expiryDate as expiryDate, coalesce(cat.reminderDays, p.reminderDays) as reminderDays "
+            + "from CertificateEntity c join c.profile p join c.category cat where c.nextNotifyOn is null")
+    List<ReminderView> findUnscheduled(Limit limit);
+
+    // Bulk update without loading the certificates, updatedAt is left as it is since the reminder date is not synced
+    @Modifying
+    @Query("update CertificateEntity c set c.nextNotifyOn = :nextNotifyOn where c.id in :ids")
+    int updateNextNotifyOn(@Param("ids") Collection<Long> ids, @Param("nextNotifyOn") LocalDate nextNotifyOn);
+
+    // Unarchived certificates among the given ids with the thresholds that apply to them
+    @Query("select c.id as id, c.expiryDate as expiryDate, coalesce(cat.reminderDays, p.reminderDays) as reminderDays "
+            + "from CertificateEntity c join c.profile p join c.category cat where c.id in :ids and c.isArchived = false")
+    List<ReminderView> findReminderViewsByIdIn(@Param("ids") Collection<Long> ids);
+
+    // Ids of a profile's certificates selected by a bulk operation, certificates of excludedCategoryId are left out
+    @Query("select c.id from CertificateEntity c where c.profile.id = :profileId "
+            + "and (:categoryId is null or c.category.id = :categoryId) "
+            + "and (:archived is null or c.isArchived = :archived) "
+            + "and (:excludedCategoryId is null or c.category.id <> :excludedCategoryId) order by c.id")
+    List<Long> findBulkIds(@Param("profileId") Long profileId,
+                           @Param("categoryId") Long categoryId,
+                           @Param("archived") Boolean archived,
+                           @Param("excludedCategoryId") Long excludedCategoryId,
+                           Limit limit);
+
+    // Same selection narrowed to the given ids, ids of other profiles are dropped
+    @Query("select c.id from CertificateEntity c where c.profile.id = :profileId and c.id in :ids "
+            + "and (:categoryId is null or c.category.id = :categoryId) "
+            + "and (:archived is null or c.isArchived = :archived) "
+            + "and (:excludedCategoryId is null or c.category.id <> :excludedCategoryId)")
+    List<Long> findBulkIdsIn(@Param("profileId") Long profileId,
+                             @Param("ids") Collection<Long> ids,
+                             @Param("categoryId") Long categoryId,
+                             @Param("archived") Boolean archived,
+                             @Param("excludedCategoryId") Long excludedCategoryId);
+
+    // @UpdateTimestamp does not apply to HQL updates, updatedAt is set here so the delta sync picks the rows up
+    @Modifying
+    @Query("update CertificateEntity c set c.isArchived = :archived, c.updatedAt = :updatedAt "
+            + "where c.profile.id = :profileId and c.id in :ids")
+    int updateArchived(@Param("profileId") Long profileId,
+                       @Param("ids") Collection<Long> ids,
+                       @Param("archived") boolean archived,
+                       @Param("updatedAt") LocalDateTime updatedAt);
+
+    @Modifying
+    @Query("update CertificateEntity c set c.category = :category, c.updatedAt = :updatedAt "
+            + "where c.profile.id = :profileId and c.id in :ids")
+    int updateCategory(@Param("profileId") Long profileId,
+                       @Param("ids") Collection<Long> ids,
+                       @Param("category") CategoryEntity category,
+                       @Param("updatedAt") LocalDateTime updatedAt);
 
+    @Modifying
+    @Query("delete from CertificateEntity c where c.profile.id = :profileId and c.id in :ids")
+    int deleteByProfileIdAndIdIn(@Param("profileId") Long profileId, @Param("ids") Collection<Long> ids);
 }
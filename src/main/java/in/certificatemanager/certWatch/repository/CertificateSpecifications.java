@@ -0,0 +1,112 @@
+package in.certificatemanager.certWatch.repository;
+
+import in.certificatemanager.certWatch.entity.CertificateEntity;
+import jakarta.persistence.criteria.Path;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.time.LocalDate;
+import java.util.Locale;
+
+// Building blocks for the filtered, keyset paginated certificate listing
+public class CertificateSpecifications {
+
+    private CertificateSpecifications() {
+    }
+
+    public static Specification<CertificateEntity> ofProfile(Long profileId) {
+        return (root, query, cb) -> cb.equal(root.get("profile").get("id"), profileId);
+    }
+
+    public static Specification<CertificateEntity> inCategory(Long categoryId) {
+        return categoryId == null ? null : (root, query, cb) -> cb.equal(root.get("category").get("id"), categoryId);
+    }
+
+    public static Specification<CertificateEntity> isArchived(Boolean archived) {
+        return archived == null ? null : (root, query, cb) -> cb.equal(root.get("isArchived"), archived);
+    }
+
+    public static Specification<CertificateEntity> issuerContains(String issuer) {
+        return isBlank(issuer) ? null : (root, query, cb) ->
+                cb.like(cb.lower(root.get("issuedBy")), likePattern(issuer), '\\');
+    }
+
+    public static Specification<CertificateEntity> hasAlgorithm(String algorithm) {
+        return isBlank(algorithm) ? null : (root, query, cb) -> cb.equal(root.get("signatureAlgorithm"), algorithm.trim());
+    }
+
+    public static Specification<CertificateEntity> expiresBetween(LocalDate from, LocalDate to) {
+        if (from == null && to == null) return null;
+        return (root, query, cb) -> {
+            Path<LocalDate> expiryDate = root.get("expiryDate");
+            if (from == null) return cb.lessThanOrEqualTo(expiryDate, to);
+            if (to == null) return cb.greaterThanOrEqualTo(expiryDate, from);
+            return cb.between(expiryDate, from, to);
+        };
+    }
+
+    // Matches the subject or the subject alternative names
+    public static Specification<CertificateEntity> subjectOrSanContains(String search) {
+        return isBlank(search) ? null : (root, query, cb) -> cb.or(
+                cb.like(cb.lower(root.get("subject")), likePattern(search), '\\'),
+                cb.like(cb.lower(root.get("subjectAltName")), likePattern(search), '\\'));
+    }
+
+    // Orders by id only, adds no condition
+    public static Specification<CertificateEntity> orderedById(boolean ascending) {
+        return (root, query, cb) -> {
+            query.orderBy(ascending ? cb.asc(root.get("id")) : cb.desc(root.get("id")));
+            return null;
+        };
+    }
+
+    // Certificates with or without an expiry date. The listing by expiry date reads the two groups one after the
+    // other, so within each group the order is plain and matches the (..., expiry_date, id) indexes.
+    public static Specification<CertificateEntity> hasExpiryDate(boolean present) {
+        return (root, query, cb) -> present ? cb.isNotNull(root.get("expiryDate")) : cb.isNull(root.get("expiryDate"));
+    }
+
+    // Orders by expiry date then id, adds no condition. Only used together with hasExpiryDate(true): without a
+    // null precedence clause the database can walk the index forwards or backwards instead of sorting.
+    public static Specification<CertificateEntity> orderedByExpiryDate(boolean ascending) {
+        return (root, query, cb) -> {
+            query.orderBy(
+                    ascending ? cb.asc(root.get("expiryDate")) : cb.desc(root.get("expiryDate")),
+                    ascending ? cb.asc(root.get("id")) : cb.desc(root.get("id")));
+            return null;
+        };
+    }
+
+    // Keyset condition for rows after (lastId) when ordering by id only
+    public static Specification<CertificateEntity> afterId(Long lastId, boolean ascending) {
+        return (root, query, cb) -> ascending
+                ? cb.greaterThan(root.get("id"), lastId)
+                : cb.lessThan(root.get("id"), lastId);
+    }
+
+    // Keyset condition for rows after (lastExpiryDate, lastId) when ordering by expiry date then id.
+    // The redundant bound on expiry_date alone is what MySQL and PostgreSQL turn into the start of an index range,
+    // the OR then only filters the rows sharing lastExpiryDate.
+    public static Specification<CertificateEntity> afterExpiryDate(LocalDate lastExpiryDate, Long lastId, boolean ascending) {
+        return (root, query, cb) -> {
+            Path<LocalDate> expiryDate = root.get("expiryDate");
+            Path<Long> id = root.get("id");
+            return cb.and(
+                    ascending ? cb.greaterThanOrEqualTo(expiryDate, lastExpiryDate) : cb.lessThanOrEqualTo(expiryDate, lastExpiryDate),
+                    cb.or(
+                            ascending ? cb.greaterThan(expiryDate, lastExpiryDate) : cb.lessThan(expiryDate, lastExpiryDate),
+                            cb.and(cb.equal(expiryDate, lastExpiryDate), ascending ? cb.greaterThan(id, lastId) : cb.lessThan(id, lastId))));
+        };
+    }
+
+    private static boolean isBlank(String value) {
+        return value == null || value.isBlank();
+    }
+
+    private static String likePattern(String value) {
+        String escaped = value.trim().toLowerCase(Locale.ROOT)
+                .replace("\\", "\\\\")
+                .replace("%", "\\%")
+                .replace("_", "\\_");
+        return "%" + escaped + "%";
+    }
+}
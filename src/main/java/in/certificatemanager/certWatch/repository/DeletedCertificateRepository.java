@@ -1,7 +1,44 @@
 package in.certificatemanager.certWatch.repository;
 
 import in.certificatemanager.certWatch.entity.DeletedCertificateEntity;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
 
 public interface DeletedCertificateRepository extends JpaRepository<DeletedCertificateEntity, Long> {
+
+    // Only the id and the deletion time are selected, used by the delta sync
+    interface DeletedView {
+        Long getId();
+        LocalDateTime getDeletedAt();
+    }
+
+    // Deletions after (afterDeletedAt, afterId) up to upTo in keyset order, served by the (profile_id, deleted_at, id) index
+    @Query("select d.id as id, d.deletedAt as deletedAt from DeletedCertificateEntity d "
+            + "where d.profile.id = :profileId and d.deletedAt <= :upTo "
+            + "and (d.deletedAt > :afterDeletedAt or (d.deletedAt = :afterDeletedAt and d.id > :afterId)) "
+            + "order by d.deletedAt, d.id")
+    List<DeletedView> findDeletedSince(@Param("profileId") Long profileId,
+                                       @Param("afterDeletedAt") LocalDateTime afterDeletedAt,
+                                       @Param("afterId") Long afterId,
+                                       @Param("upTo") LocalDateTime upTo,
+                                       Limit limit);
+
+    // Copies the certificates in one insert ... select instead of saving an entity per row,
+    // @CreationTimestamp does not fire here so deletedAt is passed in
+    @Modifying
+    @Query("insert into DeletedCertificateEntity (id, subject, issuedBy, serialNumber, version, signatureAlgorithm, "
+            + "issuedDate, expiryDate, subjectAltName, fingerprint, deletedAt, profile) "
+            + "select c.id, c.subject, c.issuedBy, c.serialNumber, c.version, c.signatureAlgorithm, "
+            + "c.issuedDate, c.expiryDate, c.subjectAltName, c.fingerprint, :deletedAt, c.profile "
+            + "from CertificateEntity c where c.profile.id = :profileId and c.id in :ids")
+    int copyFromCertificates(@Param("profileId") Long profileId,
+                             @Param("ids") Collection<Long> ids,
+                             @Param("deletedAt") LocalDateTime deletedAt);
 }
@@ -0,0 +1,36 @@
+package in.certificatemanager.certWatch.repository;
+
+import in.certificatemanager.certWatch.entity.EmailOutboxEntity;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+public interface EmailOutboxRepository extends JpaRepository<EmailOutboxEntity, Long> {
+
+    boolean existsByDedupKey(String dedupKey);
+
+    // select ... for update skip locked, so that several workers never claim the same email
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @QueryHints(@QueryHint(name = "jakarta.persistence.lock.timeout", value = "-2"))
+    @Query("select e from EmailOutboxEntity e where e.status = :status and e.nextAttemptAt <= :now order by e.nextAttemptAt, e.id")
+    List<EmailOutboxEntity> findDueForUpdate(@Param("status") EmailOutboxEntity.Status status,
+                                             @Param("now") LocalDateTime now,
+                                             Limit limit);
+
+    @Modifying
+    @Query("delete from EmailOutboxEntity e where e.status = :status and e.sentAt < :before")
+    int deleteByStatusAndSentAtBefore(@Param("status") EmailOutboxEntity.Status status, @Param("before") LocalDateTime before);
+
+    @Modifying
+    @Query("delete from EmailOutboxEntity e where e.status = :status and e.createdAt < :before")
+    int deleteByStatusAndCreatedAtBefore(@Param("status") EmailOutboxEntity.Status status, @Param("before") LocalDateTime before);
+}
@@ -0,0 +1,40 @@
+package in.certificatemanager.certWatch.repository;
+
+import in.certificatemanager.certWatch.entity.JobLockEntity;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+
+public interface JobLockRepository extends JpaRepository<JobLockEntity, String> {
+
+    // Takes over the lock once its lease ran out, the row lock of the update makes sure only one node sees an updated row
+    @Transactional
+    @Modifying
+    @Query("update JobLockEntity l set l.lockedBy = :node, l.lockedAt = :now, l.lockedUntil = :until "
+            + "where l.name = :name and l.lockedUntil <= :now")
+    int tryAcquire(@Param("name") String name, @Param("node") String node,
+                   @Param("now") LocalDateTime now, @Param("until") LocalDateTime until);
+
+    // First use of a lock, fails on the primary key if another node inserted it first
+    @Transactional
+    @Modifying
+    @Query(value = "insert into tbl_job_locks (name, locked_by, locked_at, locked_until) values (:name, :node, :now, :until)",
+            nativeQuery = true)
+    void insertLocked(@Param("name") String name, @Param("node") String node,
+                      @Param("now") LocalDateTime now, @Param("until") LocalDateTime until);
+
+    // Moves the end of the lease while the node still holds the lock, 0 once another node took it over
+    @Transactional
+    @Modifying
+    @Query("update JobLockEntity l set l.lockedUntil = :until where l.name = :name and l.lockedBy = :node")
+    int extend(@Param("name") String name, @Param("node") String node, @Param("until") LocalDateTime until);
+
+    @Transactional
+    @Modifying
+    @Query("update JobLockEntity l set l.lockedUntil = :until where l.name = :name and l.lockedBy = :node")
+    int release(@Param("name") String name, @Param("node") String node, @Param("until") LocalDateTime until);
+}
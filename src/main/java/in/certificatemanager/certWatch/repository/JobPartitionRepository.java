@@ -0,0 +1,47 @@
+package in.certificatemanager.certWatch.repository;
+
+import in.certificatemanager.certWatch.entity.JobPartitionEntity;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+
+public interface JobPartitionRepository extends JpaRepository<JobPartitionEntity, Long> {
+
+    @Query("select p from JobPartitionEntity p where p.jobName = :jobName and p.runDate = :runDate "
+            + "and (p.status = 'PENDING' or (p.status = 'RUNNING' and p.leaseUntil < :now)) order by p.partitionNo")
+    List<JobPartitionEntity> findClaimable(@Param("jobName") String jobName, @Param("runDate") LocalDate runDate,
+                                           @Param("now") LocalDateTime now);
+
+    @Query("select count(p) > 0 from JobPartitionEntity p where p.jobName = :jobName and p.runDate = :runDate")
+    boolean existsRun(@Param("jobName") String jobName, @Param("runDate") LocalDate runDate);
+
+    // Same condition as findClaimable, when two nodes race for a partition only one of them updates the row
+    @Transactional
+    @Modifying
+    @Query("update JobPartitionEntity p set p.status = 'RUNNING', p.claimedBy = :node, p.leaseUntil = :until "
+            + "where p.id = :id and (p.status = 'PENDING' or (p.status = 'RUNNING' and p.leaseUntil < :now))")
+    int claim(@Param("id") Long id, @Param("node") String node,
+              @Param("now") LocalDateTime now, @Param("until") LocalDateTime until);
+
+    // 0 once the partition was claimed by another node after the lease ran out
+    @Transactional
+    @Modifying
+    @Query("update JobPartitionEntity p set p.leaseUntil = :until where p.id = :id and p.claimedBy = :node and p.status = 'RUNNING'")
+    int extendLease(@Param("id") Long id, @Param("node") String node, @Param("until") LocalDateTime until);
+
+    @Transactional
+    @Modifying
+    @Query("update JobPartitionEntity p set p.status = 'DONE', p.completedAt = :now where p.id = :id and p.claimedBy = :node")
+    int complete(@Param("id") Long id, @Param("node") String node, @Param("now") LocalDateTime now);
+
+    @Transactional
+    @Modifying
+    @Query("delete from JobPartitionEntity p where p.runDate < :before")
+    int deleteByRunDateBefore(@Param("before") LocalDate before);
+}
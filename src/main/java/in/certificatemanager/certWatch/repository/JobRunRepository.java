@@ -0,0 +1,40 @@
+package in.certificatemanager.certWatch.repository;
+
+import in.certificatemanager.certWatch.entity.JobRunEntity;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+public interface JobRunRepository extends JpaRepository<JobRunEntity, Long> {
+
+    @Query("select r from JobRunEntity r where r.jobName = :jobName and r.runDate = :runDate and r.scope = :scope")
+    Optional<JobRunEntity> findRun(@Param("jobName") String jobName, @Param("runDate") LocalDate runDate, @Param("scope") String scope);
+
+    @Query("select count(r) > 0 from JobRunEntity r where r.jobName = :jobName and r.runDate = :runDate and r.status = :status")
+    boolean existsByStatus(@Param("jobName") String jobName, @Param("runDate") LocalDate runDate,
+                           @Param("status") JobRunEntity.Status status);
+
+    // Joins the transaction of the chunk, the checkpoint is committed together with its work
+    @Transactional
+    @Modifying
+    @Query("update JobRunEntity r set r.lastProfileId = :lastProfileId, r.processed = r.processed + :processed, "
+            + "r.checkpointAt = :now where r.id = :id")
+    int checkpoint(@Param("id") Long id, @Param("lastProfileId") Long lastProfileId,
+                   @Param("processed") int processed, @Param("now") LocalDateTime now);
+
+    @Transactional
+    @Modifying
+    @Query("update JobRunEntity r set r.status = :status, r.finishedAt = :now where r.id = :id")
+    int finish(@Param("id") Long id, @Param("status") JobRunEntity.Status status, @Param("now") LocalDateTime now);
+
+    @Transactional
+    @Modifying
+    @Query("delete from JobRunEntity r where r.runDate < :before")
+    int deleteByRunDateBefore(@Param("before") LocalDate before);
+}
@@ -2,6 +2,10 @@ package in.certificatemanager.certWatch.repository;
 
 import in.certificatemanager.certWatch.entity.ProfileEntity;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.Optional;
 
@@ -14,4 +18,25 @@ public interface ProfileRepository extends JpaRepository<ProfileEntity, Long> {
     // SELECT * FROM TBL_PROFILES WHERE ACTIVATION_TOKEN = ?
     Optional<ProfileEntity> findByActivationToken(String activationToken);
 
+    // List versions are read by primary key without loading the profile or any list
+    @Query("select p.certificatesVersion from ProfileEntity p where p.id = :profileId")
+    Optional<Long> findCertificatesVersionById(@Param("profileId") Long profileId);
+
+    @Query("select p.categoriesVersion from ProfileEntity p where p.id = :profileId")
+    Optional<Long> findCategoriesVersionById(@Param("profileId") Long profileId);
+
+    @Transactional
+    @Modifying
+    @Query(value = "update tbl_profiles set certificates_version = certificates_version + 1 where id = :profileId", nativeQuery = true)
+    void incrementCertificatesVersion(@Param("profileId") Long profileId);
+
+    @Transactional
+    @Modifying
+    @Query(value = "update tbl_profiles set categories_version = categories_version + 1 where id = :profileId", nativeQuery = true)
+    void incrementCategoriesVersion(@Param("profileId") Long profileId);
+
+    // Upper bound of the profile id ranges the reminder job is partitioned into
+    @Query("select coalesce(max(p.id), 0) from ProfileEntity p")
+    long findMaxId();
+
 }
@@ -0,0 +1,30 @@
+package in.certificatemanager.certWatch.repository;
+
+import in.certificatemanager.certWatch.entity.ReminderLedgerEntity;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+
+public interface ReminderLedgerRepository extends JpaRepository<ReminderLedgerEntity, Long> {
+
+    interface SentView {
+        Long getProfileId();
+        Integer getThreshold();
+    }
+
+    // Served by the unique (profile_id, reminder_date, threshold) index
+    @Query("select l.profileId as profileId, l.threshold as threshold from ReminderLedgerEntity l "
+            + "where l.profileId in :profileIds and l.reminderDate = :reminderDate")
+    List<SentView> findSent(@Param("profileIds") Collection<Long> profileIds, @Param("reminderDate") LocalDate reminderDate);
+
+    @Transactional
+    @Modifying
+    @Query("delete from ReminderLedgerEntity l where l.reminderDate < :before")
+    int deleteByReminderDateBefore(@Param("before") LocalDate before);
+}
@@ -0,0 +1,13 @@
+package in.certificatemanager.certWatch.security;
+
+import org.springframework.security.core.AuthenticatedPrincipal;
+
+// Principal of an authenticated request, built from the JWT claims.
+// getName() returns the email, so Authentication.getName() keeps returning the email as before.
+public record AuthenticatedProfile(Long id, String email) implements AuthenticatedPrincipal {
+
+    @Override
+    public String getName() {
+        return email;
+    }
+}
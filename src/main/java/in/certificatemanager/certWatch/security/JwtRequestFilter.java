@@ -1,29 +1,56 @@
 package in.certificatemanager.certWatch.security;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import in.certificatemanager.certWatch.entity.ProfileEntity;
+import in.certificatemanager.certWatch.repository.ProfileRepository;
 import in.certificatemanager.certWatch.util.JwtUtil;
+import io.jsonwebtoken.Claims;
 import io.jsonwebtoken.ExpiredJwtException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
-import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpMethod;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.context.SecurityContextHolder;
-import org.springframework.security.core.userdetails.UserDetails;
-import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.web.authentication.WebAuthenticationDetailsSource;
 import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
 
 import java.io.IOException;
+import java.time.Duration;
+import java.util.Collections;
 
 @Component
-@RequiredArgsConstructor
 public class JwtRequestFilter extends OncePerRequestFilter {
 
-    private final UserDetailsService userDetailsService;
     private final JwtUtil jwtUtil;
+    private final ProfileRepository profileRepository;
+
+    // Principals of recently verified tokens. The key is the whole token including its signature,
+    // so a hit means that exactly this token was verified before and only its expiry has to be checked.
+    private final Cache<String, CachedPrincipal> principalCache;
+
+    record CachedPrincipal(AuthenticatedProfile principal, long expiresAtMillis) {}
+
+    public JwtRequestFilter(JwtUtil jwtUtil,
+                            ProfileRepository profileRepository,
+                            MeterRegistry meterRegistry,
+                            @Value("${certwatch.auth.principal-cache.max-size:10000}") long maxSize,
+                            @Value("${certwatch.auth.principal-cache.ttl:PT5M}") Duration ttl) {
+        this.jwtUtil = jwtUtil;
+        this.profileRepository = profileRepository;
+        this.principalCache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, principalCache, "jwtPrincipals");
+    }
 
     @Override
     protected boolean shouldNotFilter(HttpServletRequest request) {
@@ -38,19 +65,12 @@ public class JwtRequestFilter extends OncePerRequestFilter {
     @Override
     protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain) throws ServletException, IOException {
         final String authHeader = request.getHeader("Authorization");
-        String email = null;
-        String jwt = null;
         try{
-            if(authHeader != null && authHeader.startsWith("Bearer ")){
-                jwt = authHeader.substring(7);
-                email = jwtUtil.getUsernameFromToken(jwt);
-            }
-
-            if(email != null && SecurityContextHolder.getContext().getAuthentication() == null){
-                UserDetails userDetails = this.userDetailsService.loadUserByUsername(email);
-                if(jwtUtil.validateJwtToken(jwt)){
+            if(authHeader != null && authHeader.startsWith("Bearer ") && SecurityContextHolder.getContext().getAuthentication() == null){
+                AuthenticatedProfile principal = resolvePrincipal(authHeader.substring(7));
+                if(principal != null){
                     UsernamePasswordAuthenticationToken authToken = new UsernamePasswordAuthenticationToken(
-                        userDetails, null, userDetails.getAuthorities()
+                        principal, null, Collections.emptyList()
                     );
                     authToken.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
                     SecurityContextHolder.getContext().setAuthentication(authToken);
@@ -63,4 +83,31 @@ public class JwtRequestFilter extends OncePerRequestFilter {
             throw ex;
         }
     }
-}
\ No newline at end of file
+
+    // Returns null if the token is invalid, throws ExpiredJwtException if it has expired
+    private AuthenticatedProfile resolvePrincipal(String jwt) {
+        CachedPrincipal cached = principalCache.getIfPresent(jwt);
+        if(cached != null){
+            if(cached.expiresAtMillis() > System.currentTimeMillis()){
+                return cached.principal();
+            }
+            // Parsing it again reports the expiry
+            principalCache.invalidate(jwt);
+        }
+
+        Claims claims = jwtUtil.parseValidClaims(jwt);
+        if(claims == null || claims.getSubject() == null){
+            return null;
+        }
+        Long profileId = claims.get(JwtUtil.PROFILE_ID_CLAIM, Long.class);
+        if(profileId == null){
+            // Tokens issued before the profile id claim was added
+            profileId = profileRepository.findByEmail(claims.getSubject()).map(ProfileEntity::getId).orElse(null);
+            if(profileId == null) return null;
+        }
+
+        AuthenticatedProfile principal = new AuthenticatedProfile(profileId, claims.getSubject());
+        principalCache.put(jwt, new CachedPrincipal(principal, claims.getExpiration().getTime()));
+        return principal;
+    }
+}
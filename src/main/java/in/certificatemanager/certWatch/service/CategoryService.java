@@ -3,10 +3,13 @@ package in.certificatemanager.certWatch.service;
 import in.certificatemanager.certWatch.customExceptions.ResourceInUseException;
 import in.certificatemanager.certWatch.customExceptions.ResourceNotFoundException;
 import in.certificatemanager.certWatch.dto.CategoryDTO;
+import in.certificatemanager.certWatch.dto.ReminderSettingsDTO;
 import in.certificatemanager.certWatch.entity.CategoryEntity;
 import in.certificatemanager.certWatch.entity.ProfileEntity;
 import in.certificatemanager.certWatch.repository.CategoryRepository;
 import in.certificatemanager.certWatch.repository.CertificateRepository;
+import in.certificatemanager.certWatch.util.ETagUtil;
+import in.certificatemanager.certWatch.util.ReminderSchedule;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
@@ -22,67 +25,93 @@ public class CategoryService {
     private final ProfileService profileService;
     private final CategoryRepository categoryRepository;
     private final CertificateRepository certificateRepository;
+    private final ProfileListCache profileListCache;
+    private final ReminderScheduleService reminderScheduleService;
 
     // save category
     public CategoryDTO saveCategory(CategoryDTO categoryDTO){
-        ProfileEntity profile = profileService.getCurrentProfile();
+        ProfileEntity profile = profileService.getCurrentProfileReference();
         if(categoryRepository.existsByNameAndProfileId(categoryDTO.getName(),profile.getId())){
             log.info("Category with the name [" + categoryDTO.getName() + "] already exists.");
             throw new ResourceInUseException("Category with the name [" + categoryDTO.getName() + "] already exists.");
         }else{
             CategoryEntity newCategory = toEntity(categoryDTO, profile);
             newCategory = categoryRepository.save(newCategory);
+            profileService.categoriesChanged(profile.getId());
             return toDTO(newCategory);
         }
     }
 
+    // Strong ETag of the category list of the current profile for the version from ProfileService.getCategoriesVersion,
+    // the list itself must be read with the same version
+    public String getCategoryListETag(long version){
+        return ETagUtil.listETag("categories", profileService.getCurrentProfileId(), version);
+    }
+
     // get categories for current user
-    public List<CategoryDTO> getCategoriesForCurrentUser(){
-        ProfileEntity profile = profileService.getCurrentProfile();
-        List<CategoryEntity> categories = categoryRepository.findByProfileId(profile.getId());
-        if(categories.isEmpty()) log.info("No categories found for the user - " + profile.getId());
-        return categories.stream().map(this::toDTO).toList();
+    public List<CategoryDTO> getCategoriesForCurrentUser(long version){
+        Long profileId = profileService.getCurrentProfileId();
+        List<CategoryDTO> categories = profileListCache.getCategories(profileId, version, () -> categoryRepository.findDTOsByProfileId(profileId));
+        if(categories.isEmpty()) log.info("No categories found for the user - " + profileId);
+        return categories;
     }
 
     public CategoryDTO updateCategory(Long categoryId, CategoryDTO dto){
-        ProfileEntity profile = profileService.getCurrentProfile();
+        Long profileId = profileService.getCurrentProfileId();
 
         // Find the category with the id mentioned in the request
         CategoryEntity existingCategory = categoryRepository
-                .findByIdAndProfileId(categoryId, profile.getId())
+                .findByIdAndProfileId(categoryId, profileId)
                 .orElseThrow(() -> {
                     log.info("No category is found for category Id - " + categoryId);
                     return new ResourceNotFoundException("Category not found");
                 });
 
         // Check if any category already exists with the name provided in the request
-        if(categoryRepository.existsByNameAndProfileId(dto.getName(),profile.getId())){
+        if(categoryRepository.existsByNameAndProfileId(dto.getName(),profileId)){
             log.info("Category with the name [" + dto.getName() + "] already exists.");
             throw new ResourceInUseException("Category with the name [" + dto.getName() + "] already exists.");
         }else{
             existingCategory.setName(dto.getName());
             existingCategory.setIcon(dto.getIcon());
             existingCategory = categoryRepository.save(existingCategory);
+            profileService.categoriesChanged(profileId);
             log.info("Category details updated for category Id - " + categoryId);
             return toDTO(existingCategory);
         }
     }
 
+    // Blank reminder days make the category use the thresholds of the profile again
+    public CategoryDTO updateReminderDays(Long categoryId, ReminderSettingsDTO settings){
+        Long profileId = profileService.getCurrentProfileId();
+        CategoryEntity category = categoryRepository
+                .findByIdAndProfileId(categoryId, profileId)
+                .orElseThrow(() -> new ResourceNotFoundException("Category not found"));
+
+        category.setReminderDays(ReminderSchedule.normalize(settings.getReminderDays()));
+        category = categoryRepository.save(category);
+        profileService.categoriesChanged(profileId);
+        reminderScheduleService.reschedule(profileId, categoryId);
+        log.info("Reminder days updated for category Id - " + categoryId);
+        return toDTO(category);
+    }
+
     public void deleteCategory(Long categoryId){
 
-        ProfileEntity profile = profileService.getCurrentProfile();
+        Long profileId = profileService.getCurrentProfileId();
         CategoryEntity category = categoryRepository
-                .findByIdAndProfileId(categoryId, profile.getId())
+                .findByIdAndProfileId(categoryId, profileId)
                 .orElseThrow(() -> {
                     log.info("No category is found for category Id - " + categoryId);
                     return new ResourceNotFoundException("Category not found");
                 });
 
         boolean hasCertificates = certificateRepository
-                .existsByProfileIdAndCategoryId(profile.getId(), categoryId);
+                .existsByProfileIdAndCategoryId(profileId, categoryId);
 
         if (!hasCertificates) {
             categoryRepository.delete(category);
+            profileService.categoriesChanged(profileId);
             log.info("Category => "+category.getName() + " is deleted.");
         }else{
             throw new ResourceInUseException("Category contains certificates. Delete them first.");
@@ -94,6 +123,7 @@ public class CategoryService {
         return CategoryEntity.builder()
                 .name(categoryDTO.getName())
                 .icon(categoryDTO.getIcon())
+                .reminderDays(ReminderSchedule.normalize(categoryDTO.getReminderDays()))
                 .profile(profile)
                 .build();
     }
@@ -104,6 +134,7 @@ public class CategoryService {
                 .profileId(entity.getProfile() != null ? entity.getProfile().getId() : null)
                 .name(entity.getName())
                 .icon(entity.getIcon())
+                .reminderDays(entity.getReminderDays())
                 .createdAt(entity.getCreatedAt())
                 .updatedAt(entity.getUpdatedAt())
                 .build();
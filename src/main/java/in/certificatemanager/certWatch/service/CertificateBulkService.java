@@ -0,0 +1,138 @@
+package in.certificatemanager.certWatch.service;
+
+import in.certificatemanager.certWatch.customExceptions.InvalidRequestParameterException;
+import in.certificatemanager.certWatch.customExceptions.ResourceNotFoundException;
+import in.certificatemanager.certWatch.dto.BulkCertificateRequestDTO;
+import in.certificatemanager.certWatch.dto.BulkCertificateResultDTO;
+import in.certificatemanager.certWatch.entity.CategoryEntity;
+import in.certificatemanager.certWatch.repository.CategoryRepository;
+import in.certificatemanager.certWatch.repository.CertificateRepository;
+import in.certificatemanager.certWatch.repository.DeletedCertificateRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+// Archives, unarchives, moves or deletes many certificates of the current profile at once. The certificates are
+// not loaded: a few set-based statements per chunk of ids run in one transaction.
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class CertificateBulkService {
+
+    // Ids per IN list, keeps every statement well below the bind parameter limits of the drivers
+    private static final int CHUNK_SIZE = 1000;
+
+    enum Action { ARCHIVE, UNARCHIVE, RECATEGORISE, DELETE }
+
+    private final CertificateRepository certificateRepository;
+    private final DeletedCertificateRepository deletedCertificateRepository;
+    private final CategoryRepository categoryRepository;
+    private final ProfileService profileService;
+    private final ReminderScheduleService reminderScheduleService;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${certwatch.bulk.max-certificates:10000}")
+    private int maxCertificates;
+
+    public BulkCertificateResultDTO apply(BulkCertificateRequestDTO request){
+        Action action = parseAction(request.getAction());
+        List<Long> requestedIds = request.getIds() != null ? request.getIds() : List.of();
+        if(requestedIds.isEmpty() && request.getCategoryId() == null && request.getArchived() == null){
+            throw new InvalidRequestParameterException("Select the certificates with ids, categoryId or archived.");
+        }
+        if(requestedIds.size() > maxCertificates){
+            throw new InvalidRequestParameterException("At most " + maxCertificates + " certificates can be changed at once.");
+        }
+        Long profileId = profileService.getCurrentProfileId();
+
+        CategoryEntity target = null;
+        if(action == Action.RECATEGORISE){
+            if(request.getTargetCategoryId() == null){
+                throw new InvalidRequestParameterException("targetCategoryId is required to recategorise certificates.");
+            }
+            target = categoryRepository.findByIdAndProfileId(request.getTargetCategoryId(), profileId)
+                    .orElseThrow(() -> new ResourceNotFoundException("Category not found."));
+        }
+
+        // Certificates already in the requested state are left out, so their updatedAt and reminders stay as they are
+        Boolean archived = switch(action){
+            case ARCHIVE -> false;
+            case UNARCHIVE -> true;
+            default -> request.getArchived();
+        };
+        if(request.getArchived() != null && !request.getArchived().equals(archived)){
+            return BulkCertificateResultDTO.builder().action(action.name()).affected(0).build();
+        }
+        Long excludedCategoryId = target != null ? target.getId() : null;
+
+        CategoryEntity category = target;
+        long start = System.nanoTime();
+        Integer affected = transactionTemplate.execute(status -> {
+            List<Long> ids = selectIds(profileId, requestedIds, request.getCategoryId(), archived, excludedCategoryId);
+            LocalDateTime now = LocalDateTime.now();
+            int count = 0;
+            for(int from = 0; from < ids.size(); from += CHUNK_SIZE){
+                List<Long> chunk = ids.subList(from, Math.min(from + CHUNK_SIZE, ids.size()));
+                count += switch(action){
+                    case ARCHIVE -> certificateRepository.updateArchived(profileId, chunk, true, now);
+                    case UNARCHIVE -> certificateRepository.updateArchived(profileId, chunk, false, now);
+                    case RECATEGORISE -> certificateRepository.updateCategory(profileId, chunk, category, now);
+                    case DELETE -> {
+                        deletedCertificateRepository.copyFromCertificates(profileId, chunk, now);
+                        yield certificateRepository.deleteByProfileIdAndIdIn(profileId, chunk);
+                    }
+                };
+            }
+            // Archived certificates are never selected for reminders, their date is recomputed when they are unarchived
+            if(action == Action.UNARCHIVE || action == Action.RECATEGORISE){
+                reminderScheduleService.scheduleCertificates(ids);
+            }
+            return count;
+        });
+
+        if(affected > 0) profileService.certificatesChanged(profileId);
+        log.info("Bulk {} applied [profileId={}, certificates={}, took={}ms]",
+                action, profileId, affected, (System.nanoTime() - start) / 1_000_000);
+        return BulkCertificateResultDTO.builder().action(action.name()).affected(affected).build();
+    }
+
+    // Requested ids are checked against the profile and the filters, without ids the filters select up to maxCertificates
+    private List<Long> selectIds(Long profileId, List<Long> requestedIds, Long categoryId, Boolean archived, Long excludedCategoryId){
+        if(requestedIds.isEmpty()){
+            List<Long> ids = certificateRepository.findBulkIds(profileId, categoryId, archived, excludedCategoryId,
+                    Limit.of(maxCertificates + 1));
+            if(ids.size() > maxCertificates){
+                throw new InvalidRequestParameterException("More than " + maxCertificates
+                        + " certificates match the filters, narrow the selection.");
+            }
+            return ids;
+        }
+        List<Long> distinct = requestedIds.stream().distinct().toList();
+        List<Long> ids = new ArrayList<>(distinct.size());
+        for(int from = 0; from < distinct.size(); from += CHUNK_SIZE){
+            List<Long> chunk = distinct.subList(from, Math.min(from + CHUNK_SIZE, distinct.size()));
+            ids.addAll(certificateRepository.findBulkIdsIn(profileId, chunk, categoryId, archived, excludedCategoryId));
+        }
+        return ids;
+    }
+
+    private Action parseAction(String action){
+        if(action == null){
+            throw new InvalidRequestParameterException("action is required, one of ARCHIVE, UNARCHIVE, RECATEGORISE or DELETE.");
+        }
+        try{
+            return Action.valueOf(action.trim().toUpperCase(Locale.ROOT));
+        }catch(IllegalArgumentException e){
+            throw new InvalidRequestParameterException("Unknown action : " + action
+                    + ", expected ARCHIVE, UNARCHIVE, RECATEGORISE or DELETE.");
+        }
+    }
+}
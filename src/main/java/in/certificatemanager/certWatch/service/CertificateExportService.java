@@ -0,0 +1,147 @@
+package in.certificatemanager.certWatch.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import in.certificatemanager.certWatch.dto.CertificateDTO;
+import in.certificatemanager.certWatch.repository.CertificateRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+// Machine readable exports with the columns of the Excel export. Rows go from the database cursor straight to the
+// output, nothing is collected, so memory use does not depend on the number of certificates. Unlike the Excel export
+// the cursor stays open while writing, a slow reader keeps its database connection for the length of the download.
+// Missing values are left empty (CSV) or null (NDJSON) instead of the "N/A" shown in the sheet.
+@Service
+@RequiredArgsConstructor
+public class CertificateExportService {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final CertificateRepository certificateRepository;
+    private final PlatformTransactionManager transactionManager;
+    private final ObjectMapper objectMapper;
+
+    // RFC 4180: comma separated with CRLF line ends, fields are quoted when needed
+    public void writeCertificatesToCsv(OutputStream os, Long profileId) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(os, StandardCharsets.UTF_8), BUFFER_SIZE);
+        for (int i = 0; i < ExcelService.COLUMNS.size(); i++) {
+            if (i > 0) writer.write(',');
+            writeCsvField(writer, ExcelService.COLUMNS.get(i));
+        }
+        writer.write("\r\n");
+
+        int[] rowNum = {0};
+        forEachCertificate(profileId, certificate -> {
+            try {
+                writer.write(Integer.toString(++rowNum[0]));
+                writer.write(',');
+                writeCsvField(writer, certificate.getSubject());
+                writer.write(',');
+                writeCsvField(writer, certificate.getIssuedBy());
+                writer.write(',');
+                writeCsvField(writer, certificate.getCategoryId());
+                writer.write(',');
+                writeCsvField(writer, certificate.getSerialNumber());
+                writer.write(',');
+                writeCsvField(writer, certificate.getIssuedDate());
+                writer.write(',');
+                writeCsvField(writer, certificate.getExpiryDate());
+                writer.write(',');
+                writeCsvField(writer, certificate.getVersion() != 0 ? certificate.getVersion() : null);
+                writer.write(',');
+                writeCsvField(writer, certificate.getSignatureAlgorithm());
+                writer.write(',');
+                writeCsvField(writer, certificate.getSubjectAltName());
+                writer.write(',');
+                writeCsvField(writer, certificate.getComments());
+                writer.write(',');
+                writeCsvField(writer, certificate.getIsArchived());
+                writer.write("\r\n");
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        writer.flush();
+    }
+
+    // One JSON object per line, written field by field without building a map or a DTO per row
+    public void writeCertificatesToNdjson(OutputStream os, Long profileId) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(os, StandardCharsets.UTF_8), BUFFER_SIZE);
+        JsonGenerator json = objectMapper.getFactory().createGenerator(writer);
+        json.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        // Lines are separated by the explicit newline, not by the space Jackson puts between root values
+        json.setRootValueSeparator(null);
+
+        int[] rowNum = {0};
+        forEachCertificate(profileId, certificate -> {
+            try {
+                json.writeStartObject();
+                json.writeNumberField("srNo", ++rowNum[0]);
+                json.writeStringField("subject", certificate.getSubject());
+                json.writeStringField("issuedBy", certificate.getIssuedBy());
+                json.writeObjectField("categoryId", certificate.getCategoryId());
+                json.writeStringField("serialNumber", certificate.getSerialNumber());
+                json.writeStringField("issuedDate", toText(certificate.getIssuedDate()));
+                json.writeStringField("expiryDate", toText(certificate.getExpiryDate()));
+                json.writeObjectField("version", certificate.getVersion() != 0 ? certificate.getVersion() : null);
+                json.writeStringField("signatureAlgorithm", certificate.getSignatureAlgorithm());
+                json.writeStringField("subjectAltName", certificate.getSubjectAltName());
+                json.writeStringField("comments", certificate.getComments());
+                json.writeObjectField("archived", certificate.getIsArchived());
+                json.writeEndObject();
+                json.writeRaw('\n');
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        json.close();
+        writer.flush();
+    }
+
+    private void forEachCertificate(Long profileId, Consumer<CertificateDTO> action) throws IOException {
+        TransactionTemplate readOnly = new TransactionTemplate(transactionManager);
+        readOnly.setReadOnly(true);
+        try {
+            readOnly.executeWithoutResult(status -> {
+                try (Stream<CertificateDTO> certificates = certificateRepository.streamDTOsByProfileId(profileId)) {
+                    certificates.forEach(action);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static void writeCsvField(Writer writer, Object value) throws IOException {
+        if (value == null) return;
+        String text = value.toString();
+        boolean quote = false;
+        for (int i = 0; i < text.length() && !quote; i++) {
+            char c = text.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            writer.write(text);
+            return;
+        }
+        writer.write('"');
+        writer.write(text.replace("\"", "\"\""));
+        writer.write('"');
+    }
+
+    private static String toText(Object value) {
+        return value != null ? value.toString() : null;
+    }
+}
@@ -0,0 +1,318 @@
+package in.certificatemanager.certWatch.service;
+
+import in.certificatemanager.certWatch.customExceptions.InvalidCertificateFormatException;
+import in.certificatemanager.certWatch.customExceptions.ResourceNotFoundException;
+import in.certificatemanager.certWatch.dto.CertificateImportEntryDTO;
+import in.certificatemanager.certWatch.dto.CertificateImportResultDTO;
+import in.certificatemanager.certWatch.dto.DetailsDTO;
+import in.certificatemanager.certWatch.entity.CategoryEntity;
+import in.certificatemanager.certWatch.entity.CertificateEntity;
+import in.certificatemanager.certWatch.entity.ProfileEntity;
+import in.certificatemanager.certWatch.repository.CategoryRepository;
+import in.certificatemanager.certWatch.repository.CertificateRepository;
+import in.certificatemanager.certWatch.util.CertParsingUtil;
+import in.certificatemanager.certWatch.util.ReminderSchedule;
+import jakarta.persistence.EntityManager;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class CertificateImportService {
+
+    private static final byte[] ZIP_SIGNATURE = {'P', 'K', 3, 4};
+
+    private final CertificateRepository certificateRepository;
+    private final CategoryRepository categoryRepository;
+    private final ProfileService profileService;
+    private final TransactionTemplate transactionTemplate;
+    private final EntityManager entityManager;
+    private final ReminderScheduleService reminderScheduleService;
+
+    @Value("${certwatch.import.batch-size:500}")
+    private int batchSize;
+
+    @Value("${certwatch.import.max-entries:50000}")
+    private int maxEntries;
+
+    @Value("${certwatch.import.max-entry-size:1048576}")
+    private int maxEntrySize;
+
+    // All entries of an upload are held in memory until they are parsed, so their sum is bounded as well
+    @Value("${certwatch.import.max-total-size:209715200}")
+    private long maxTotalSize;
+
+    // content is null when the entry was larger than the allowed size
+    record ImportSource(String name, byte[] content) {}
+
+    record ParsedEntry(String source, DetailsDTO details, String error) {}
+
+    // Imports a ZIP of PEM/CRT files or a multi-certificate PEM bundle into the given category
+    public CertificateImportResultDTO importCertificates(MultipartFile file, Long categoryId) throws IOException {
+        ProfileEntity profile = profileService.getCurrentProfileReference();
+        CategoryEntity category = categoryRepository.findByIdAndProfileId(categoryId, profile.getId())
+                .orElseThrow(() -> new ResourceNotFoundException("Category not found."));
+
+        List<ImportSource> sources = readSources(file);
+        List<ParsedEntry> parsedEntries = parseInParallel(sources);
+        List<Integer> reminderDays = reminderScheduleService.thresholdsOf(category.getId());
+        List<CertificateImportEntryDTO> entries = saveInBatches(parsedEntries, profile, category, reminderDays);
+        profileService.certificatesChanged(profile.getId());
+
+        Map<CertificateImportEntryDTO.Status, Long> counts = entries.stream()
+                .collect(Collectors.groupingBy(CertificateImportEntryDTO::getStatus, Collectors.counting()));
+        int imported = counts.getOrDefault(CertificateImportEntryDTO.Status.IMPORTED, 0L).intValue();
+        int duplicates = counts.getOrDefault(CertificateImportEntryDTO.Status.DUPLICATE, 0L).intValue();
+        log.info("Certificate import finished [profileId={}, categoryId={}, total={}, imported={}, duplicates={}]",
+                profile.getId(), categoryId, entries.size(), imported, duplicates);
+
+        return CertificateImportResultDTO.builder()
+                .categoryId(categoryId)
+                .total(entries.size())
+                .imported(imported)
+                .duplicates(duplicates)
+                .failed(entries.size() - imported - duplicates)
+                .entries(entries)
+                .build();
+    }
+
+    // Reading the upload, every certificate found becomes its own source
+    private List<ImportSource> readSources(MultipartFile file) throws IOException {
+        String fileName = file.getOriginalFilename() != null ? file.getOriginalFilename() : "upload";
+        List<ImportSource> sources = new ArrayList<>();
+
+        try (BufferedInputStream in = new BufferedInputStream(file.getInputStream())) {
+            in.mark(ZIP_SIGNATURE.length);
+            boolean isZip = Arrays.equals(in.readNBytes(ZIP_SIGNATURE.length), ZIP_SIGNATURE);
+            in.reset();
+
+            if (!isZip) {
+                addSources(sources, fileName, in.readAllBytes());
+                return sources;
+            }
+
+            try (ZipInputStream zip = new ZipInputStream(in)) {
+                ZipEntry zipEntry;
+                long totalSize = 0;
+                while ((zipEntry = zip.getNextEntry()) != null) {
+                    if (zipEntry.isDirectory() || zipEntry.getName().startsWith("__MACOSX/")) continue;
+                    byte[] content = readBounded(zip);
+                    if (content == null) {
+                        sources.add(new ImportSource(zipEntry.getName(), null));
+                    } else {
+                        totalSize += content.length;
+                        if (totalSize > maxTotalSize) {
+                            throw new InvalidCertificateFormatException("Upload expands to more than " + maxTotalSize + " bytes.");
+                        }
+                        addSources(sources, zipEntry.getName(), content);
+                    }
+                    if (sources.size() > maxEntries) break;
+                }
+            }
+        }
+
+        if (sources.size() > maxEntries) {
+            throw new InvalidCertificateFormatException("Upload contains more than " + maxEntries + " certificates.");
+        }
+        return sources;
+    }
+
+    private void addSources(List<ImportSource> sources, String name, byte[] content) {
+        List<byte[]> blocks = CertParsingUtil.splitPemBundle(content);
+        if (blocks.size() == 1) {
+            sources.add(new ImportSource(name, blocks.get(0)));
+            return;
+        }
+        for (int i = 0; i < blocks.size(); i++) {
+            sources.add(new ImportSource(name + "#" + (i + 1), blocks.get(i)));
+        }
+    }
+
+    // Returns null if the entry is bigger than the allowed size, so that a zip bomb cannot exhaust the heap
+    private byte[] readBounded(InputStream in) throws IOException {
+        byte[] content = in.readNBytes(maxEntrySize + 1);
+        return content.length > maxEntrySize ? null : content;
+    }
+
+    // Parsing is pure CPU work on independent entries, one platform thread per core is enough.
+    // The threads live for the whole import, so each one reuses its CertificateFactory from CertParsingUtil.
+    private List<ParsedEntry> parseInParallel(List<ImportSource> sources) {
+        List<Callable<ParsedEntry>> tasks = sources.stream()
+                .<Callable<ParsedEntry>>map(source -> () -> parse(source))
+                .toList();
+
+        int threads = Math.max(1, Math.min(sources.size(), Runtime.getRuntime().availableProcessors()));
+        try (ExecutorService executor = Executors.newFixedThreadPool(threads)) {
+            return executor.invokeAll(tasks).stream().map(Future::resultNow).toList();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+    }
+
+    private ParsedEntry parse(ImportSource source) {
+        if (source.content() == null) {
+            return new ParsedEntry(source.name(), null, "Entry exceeds the maximum size of " + maxEntrySize + " bytes.");
+        }
+        try {
+            return new ParsedEntry(source.name(), CertParsingUtil.parseCertificate(source.content()), null);
+        } catch (InvalidCertificateFormatException e) {
+            return new ParsedEntry(source.name(), null, e.getMessage());
+        } catch (Exception e) {
+            log.error("Unable to parse certificate from {}", source.name(), e);
+            return new ParsedEntry(source.name(), null, "Unable to read certificate details.");
+        }
+    }
+
+    // Saving the parsed certificates with one transaction per batch.
+    // Certificates already stored for the profile, or repeated within the upload, are skipped.
+    private List<CertificateImportEntryDTO> saveInBatches(List<ParsedEntry> parsedEntries, ProfileEntity profile, CategoryEntity category,
+                                                          List<Integer> reminderDays) {
+        CertificateImportEntryDTO[] results = new CertificateImportEntryDTO[parsedEntries.size()];
+        Map<String, Integer> firstIndexByFingerprint = new HashMap<>();
+        Map<Integer, Integer> repeatedEntries = new LinkedHashMap<>();
+        List<Integer> pendingIndexes = new ArrayList<>(batchSize);
+
+        for (int i = 0; i < parsedEntries.size(); i++) {
+            ParsedEntry parsed = parsedEntries.get(i);
+            if (parsed.details() == null) {
+                results[i] = failed(parsed, parsed.error());
+                continue;
+            }
+            Integer firstIndex = firstIndexByFingerprint.putIfAbsent(parsed.details().getFingerprint(), i);
+            if (firstIndex != null) {
+                repeatedEntries.put(i, firstIndex);
+                continue;
+            }
+            pendingIndexes.add(i);
+            if (pendingIndexes.size() == batchSize) {
+                saveBatch(parsedEntries, pendingIndexes, profile, category, reminderDays, results);
+            }
+        }
+        if (!pendingIndexes.isEmpty()) {
+            saveBatch(parsedEntries, pendingIndexes, profile, category, reminderDays, results);
+        }
+
+        repeatedEntries.forEach((index, firstIndex) -> {
+            CertificateImportEntryDTO first = results[firstIndex];
+            results[index] = first.getStatus() == CertificateImportEntryDTO.Status.FAILED
+                    ? failed(parsedEntries.get(index), first.getMessage())
+                    : duplicate(parsedEntries.get(index), first.getCertificateId());
+        });
+        return Arrays.asList(results);
+    }
+
+    private void saveBatch(List<ParsedEntry> parsedEntries, List<Integer> indexes, ProfileEntity profile, CategoryEntity category,
+                           List<Integer> reminderDays, CertificateImportEntryDTO[] results) {
+        // One index lookup for the whole batch
+        List<String> fingerprints = indexes.stream()
+                .map(index -> parsedEntries.get(index).details().getFingerprint())
+                .toList();
+        Map<String, Long> existingIds = new HashMap<>();
+        certificateRepository.findByProfileIdAndFingerprintIn(profile.getId(), fingerprints)
+                .forEach(existing -> existingIds.put(existing.getFingerprint(), existing.getId()));
+
+        List<Integer> newIndexes = new ArrayList<>(indexes.size());
+        List<CertificateEntity> entities = new ArrayList<>(indexes.size());
+        for (Integer index : indexes) {
+            ParsedEntry parsed = parsedEntries.get(index);
+            Long existingId = existingIds.get(parsed.details().getFingerprint());
+            if (existingId != null) {
+                results[index] = duplicate(parsed, existingId);
+            } else {
+                newIndexes.add(index);
+                entities.add(toEntity(parsed.details(), profile, category, reminderDays));
+            }
+        }
+        indexes.clear();
+        if (entities.isEmpty()) return;
+
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                certificateRepository.saveAll(entities);
+                detachSaved();
+            });
+            for (int i = 0; i < newIndexes.size(); i++) {
+                ParsedEntry parsed = parsedEntries.get(newIndexes.get(i));
+                results[newIndexes.get(i)] = CertificateImportEntryDTO.builder()
+                        .source(parsed.source())
+                        .status(CertificateImportEntryDTO.Status.IMPORTED)
+                        .certificateId(entities.get(i).getId())
+                        .subject(parsed.details().getSubject())
+                        .build();
+            }
+        } catch (Exception e) {
+            log.error("Unable to save certificate batch of size {}", entities.size(), e);
+            for (Integer index : newIndexes) {
+                results[index] = failed(parsedEntries.get(index), "Unable to save certificate.");
+            }
+        }
+    }
+
+    // The request keeps one persistence context open across the batches (open-in-view). Saved batches are written
+    // out and detached, otherwise every later flush and commit would go over all certificates saved so far.
+    private void detachSaved() {
+        entityManager.flush();
+        entityManager.clear();
+    }
+
+    private CertificateImportEntryDTO duplicate(ParsedEntry parsed, Long existingId) {
+        return CertificateImportEntryDTO.builder()
+                .source(parsed.source())
+                .status(CertificateImportEntryDTO.Status.DUPLICATE)
+                .certificateId(existingId)
+                .subject(parsed.details().getSubject())
+                .message("Certificate already exists.")
+                .build();
+    }
+
+    private CertificateImportEntryDTO failed(ParsedEntry parsed, String message) {
+        return CertificateImportEntryDTO.builder()
+                .source(parsed.source())
+                .status(CertificateImportEntryDTO.Status.FAILED)
+                .subject(parsed.details() != null ? parsed.details().getSubject() : null)
+                .message(message)
+                .build();
+    }
+
+    private CertificateEntity toEntity(DetailsDTO details, ProfileEntity profile, CategoryEntity category, List<Integer> reminderDays) {
+        return CertificateEntity.builder()
+                .subject(details.getSubject())
+                .issuedBy(details.getIssuedBy())
+                .issuedDate(details.getIssuedDate())
+                .expiryDate(details.getExpiryDate())
+                .version(details.getVersion())
+                .serialNumber(details.getSerialNumber())
+                .signatureAlgorithm(details.getSignatureAlgorithm())
+                .subjectAltName(details.getSubjectAltName())
+                .fingerprint(details.getFingerprint())
+                .isArchived(false)
+                .nextNotifyOn(ReminderSchedule.nextReminder(details.getExpiryDate(), reminderDays, LocalDate.now(), true))
+                .profile(profile)
+                .category(category)
+                .build();
+    }
+}
@@ -1,7 +1,11 @@
 package in.certificatemanager.certWatch.service;
 
+import in.certificatemanager.certWatch.customExceptions.InvalidRequestParameterException;
 import in.certificatemanager.certWatch.customExceptions.ResourceNotFoundException;
+import in.certificatemanager.certWatch.dto.CertificateChangesDTO;
 import in.certificatemanager.certWatch.dto.CertificateDTO;
+import in.certificatemanager.certWatch.dto.CertificateQueryDTO;
+import in.certificatemanager.certWatch.dto.CertificateSliceDTO;
 import in.certificatemanager.certWatch.dto.DetailsDTO;
 import in.certificatemanager.certWatch.entity.CategoryEntity;
 import in.certificatemanager.certWatch.entity.CertificateEntity;
@@ -9,18 +13,30 @@ import in.certificatemanager.certWatch.entity.DeletedCertificateEntity;
 import in.certificatemanager.certWatch.entity.ProfileEntity;
 import in.certificatemanager.certWatch.repository.CategoryRepository;
 import in.certificatemanager.certWatch.repository.CertificateRepository;
+import in.certificatemanager.certWatch.repository.CertificateSpecifications;
 import in.certificatemanager.certWatch.repository.DeletedCertificateRepository;
 import in.certificatemanager.certWatch.util.CertParsingUtil;
+import in.certificatemanager.certWatch.util.CursorCodec;
+import in.certificatemanager.certWatch.util.ETagUtil;
+import in.certificatemanager.certWatch.util.ReminderSchedule;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.stereotype.Service;
-import org.springframework.util.StreamUtils;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
 import java.security.cert.CertificateParsingException;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Optional;
 
 @Slf4j
 @Service
@@ -31,12 +47,24 @@ public class CertificateService {
     private final DeletedCertificateRepository deletedCertificateRepository;
     private final CategoryRepository categoryRepository;
     private final ProfileService profileService;
+    private final ProfileListCache profileListCache;
+    private final ReminderScheduleService reminderScheduleService;
 
-    // To extract text from the certificate file
+    private static final int DEFAULT_PAGE_SIZE = 50;
+    private static final int MAX_PAGE_SIZE = 200;
+    private static final int DEFAULT_CHANGES_LIMIT = 500;
+    private static final int MAX_CHANGES_LIMIT = 1000;
+    private static final LocalDateTime SYNC_START = LocalDateTime.of(1970, 1, 1, 0, 0);
+
+    // Changes younger than this are held back, a transaction that is still running when a client syncs
+    // may commit a row with an older timestamp than rows already returned
+    @Value("${certwatch.sync.settle-time:PT5S}")
+    private Duration syncSettleTime;
+
+    // To extract details from the certificate file, the upload is parsed as raw bytes
     public DetailsDTO processCertificateFile(MultipartFile file) throws IOException {
         try {
-            String fileContent = StreamUtils.copyToString(file.getInputStream(), StandardCharsets.UTF_8);
-            return CertParsingUtil.parseCertificate(fileContent);
+            return CertParsingUtil.parseCertificate(file.getBytes());
         }catch(IOException e) {
             throw new IOException(e.getMessage());
         } catch (CertificateParsingException e) {
@@ -44,47 +72,215 @@ public class CertificateService {
         }
     }
 
-    // Adds a new certificate to the database
+    // Adds a new certificate to the database,
+    // a certificate whose fingerprint is already stored for the profile is not saved again
     public CertificateDTO addCertificate(CertificateDTO certDto){
-        ProfileEntity profile = profileService.getCurrentProfile();
+        ProfileEntity profile = profileService.getCurrentProfileReference();
+        String fingerprint = CertParsingUtil.normalizeFingerprint(certDto.getFingerprint());
+        if(fingerprint != null){
+            Optional<CertificateEntity> existingCert = certificateRepository.findByProfileIdAndFingerprint(profile.getId(), fingerprint);
+            if(existingCert.isPresent()){
+                log.info("Certificate already exists [id={}, profileId={}]", existingCert.get().getId(), profile.getId());
+                return toDTO(existingCert.get());
+            }
+        }
+
         CategoryEntity category = categoryRepository.findById(certDto.getCategoryId())
                 .orElseThrow(() -> new ResourceNotFoundException("Category not found."));
         CertificateEntity newCert = toEntity(certDto, profile, category);
-        certificateRepository.save(newCert);
+        newCert.setFingerprint(fingerprint);
+        newCert.setNextNotifyOn(ReminderSchedule.nextReminder(newCert.getExpiryDate(),
+                reminderScheduleService.thresholdsOf(category.getId()), LocalDate.now(), true));
+        try{
+            certificateRepository.save(newCert);
+        }catch(DataIntegrityViolationException e){
+            // Another request saved the same certificate between the lookup and the insert
+            if(fingerprint == null) throw e;
+            return certificateRepository.findByProfileIdAndFingerprint(profile.getId(), fingerprint)
+                    .map(this::toDTO)
+                    .orElseThrow(() -> e);
+        }
+        profileService.certificatesChanged(profile.getId());
         log.info("Certificate added successfully -> " + "Certificate details = " + certDto + " , Profile Id = " + profile.getId() + " , Category Id = " + category.getId());
         return toDTO(newCert);
     }
 
-    public List<CertificateDTO>  getAllCertificatesForCurrentUser(){
-        ProfileEntity profile = profileService.getCurrentProfile();
-        List<CertificateEntity> certificates = certificateRepository.findByProfileId(profile.getId());
-        return certificates.stream().map(this::toDTO).toList();
+    // Strong ETag of a certificate list of the current profile for the version from ProfileService.getCertificatesVersion,
+    // the list itself must be read with the same version
+    public String getCertificateListETag(String listType, long version){
+        return ETagUtil.listETag("certificates-" + listType, profileService.getCurrentProfileId(), version);
     }
 
-    public List<CertificateDTO> getUnarchivedCertificatesForCurrentUser(){
-        ProfileEntity profile = profileService.getCurrentProfile();
-        List<CertificateEntity> certificates = certificateRepository.findByProfileIdAndIsArchivedFalse(profile.getId());
-        return certificates.stream().map(this::toDTO).toList();
+    public List<CertificateDTO>  getAllCertificatesForCurrentUser(long version){
+        Long profileId = profileService.getCurrentProfileId();
+        return profileListCache.getCertificates(profileId, null, version, () -> certificateRepository.findDTOsByProfileId(profileId));
     }
 
-    public List<CertificateDTO> getUnarchivedCertificatesForAnyUser(ProfileEntity profile){
-        List<CertificateEntity> certificates = certificateRepository.findByProfileIdAndIsArchivedFalse(profile.getId());
-        return certificates.stream().map(this::toDTO).toList();
+    public List<CertificateDTO> getUnarchivedCertificatesForCurrentUser(long version){
+        Long profileId = profileService.getCurrentProfileId();
+        return profileListCache.getCertificates(profileId, false, version, () -> certificateRepository.findDTOsByProfileIdAndArchived(profileId, false));
     }
 
-    public List<CertificateDTO> getArchivedCertificatesForCurrentUser(){
-        ProfileEntity profile = profileService.getCurrentProfile();
-        List<CertificateEntity> certificates = certificateRepository.findByProfileIdAndIsArchivedTrue(profile.getId());
-        return certificates.stream().map(this::toDTO).toList();
+    // Keyset paginated listing, the cursor carries the sort key and the id of the last returned certificate
+    public CertificateSliceDTO getCertificateSlice(CertificateQueryDTO query){
+        Long profileId = profileService.getCurrentProfileId();
+
+        int limit = query.getLimit() == null ? DEFAULT_PAGE_SIZE : Math.min(Math.max(query.getLimit(), 1), MAX_PAGE_SIZE);
+        boolean ascending = query.getDirection() == null || query.getDirection().equalsIgnoreCase("asc");
+        if(!ascending && !query.getDirection().equalsIgnoreCase("desc")){
+            throw new InvalidRequestParameterException("Invalid direction, expected asc or desc.");
+        }
+        boolean byExpiryDate = query.getSort() == null || query.getSort().equals("expiryDate");
+        if(!byExpiryDate && !query.getSort().equals("id")){
+            throw new InvalidRequestParameterException("Invalid sort, expected expiryDate or id.");
+        }
+
+        Specification<CertificateEntity> filters = Specification.allOf(
+                CertificateSpecifications.ofProfile(profileId),
+                CertificateSpecifications.inCategory(query.getCategoryId()),
+                CertificateSpecifications.isArchived(query.getArchived()),
+                CertificateSpecifications.issuerContains(query.getIssuer()),
+                CertificateSpecifications.hasAlgorithm(query.getAlgorithm()),
+                CertificateSpecifications.expiresBetween(query.getExpiryFrom(), query.getExpiryTo()),
+                CertificateSpecifications.subjectOrSanContains(query.getSearch()));
+
+        // One extra row tells whether another slice exists without running a count query
+        List<CertificateEntity> certificates;
+        if(!byExpiryDate){
+            Long lastId = query.getCursor() == null || query.getCursor().isBlank() ? null : decodeIdCursor(query.getCursor());
+            certificates = findAfterId(filters, lastId, ascending, limit + 1);
+        }else{
+            certificates = findByExpiryDate(filters, query.getCursor(), ascending, limit + 1);
+        }
+        boolean hasMore = certificates.size() > limit;
+        List<CertificateEntity> slice = hasMore ? certificates.subList(0, limit) : certificates;
+
+        String nextCursor = null;
+        if(hasMore){
+            CertificateEntity last = slice.get(slice.size() - 1);
+            nextCursor = byExpiryDate ? CursorCodec.encode(last.getExpiryDate(), last.getId()) : CursorCodec.encode(last.getId());
+        }
+
+        return CertificateSliceDTO.builder()
+                .items(slice.stream().map(this::toDTO).toList())
+                .nextCursor(nextCursor)
+                .hasMore(hasMore)
+                .build();
+    }
+
+    // Certificates created, updated or deleted after the cursor. Without a cursor every certificate is returned.
+    // The cursor carries the last seen (updatedAt, id) of the certificates and (deletedAt, id) of the deletions.
+    public CertificateChangesDTO getChangesSince(String cursor, Integer limit){
+        Long profileId = profileService.getCurrentProfileId();
+        int size = limit == null ? DEFAULT_CHANGES_LIMIT : Math.min(Math.max(limit, 1), MAX_CHANGES_LIMIT);
+
+        LocalDateTime afterUpdatedAt = SYNC_START;
+        long afterCertificateId = 0L;
+        LocalDateTime afterDeletedAt = SYNC_START;
+        long afterDeletedId = 0L;
+        if(cursor != null && !cursor.isBlank()){
+            String[] parts = CursorCodec.decode(cursor, 4);
+            try{
+                afterUpdatedAt = LocalDateTime.parse(parts[0]);
+                afterCertificateId = Long.parseLong(parts[1]);
+                afterDeletedAt = LocalDateTime.parse(parts[2]);
+                afterDeletedId = Long.parseLong(parts[3]);
+            }catch(DateTimeParseException | NumberFormatException | NullPointerException e){
+                throw new InvalidRequestParameterException("Invalid cursor.");
+            }
+        }
+
+        LocalDateTime upTo = LocalDateTime.now().minus(syncSettleTime);
+        // One extra row of each kind tells whether more changes are waiting
+        List<CertificateDTO> upserted = certificateRepository.findChangedSince(profileId, afterUpdatedAt, afterCertificateId, upTo, Limit.of(size + 1));
+        List<DeletedCertificateRepository.DeletedView> deleted = deletedCertificateRepository.findDeletedSince(profileId, afterDeletedAt, afterDeletedId, upTo, Limit.of(size + 1));
+        boolean hasMore = upserted.size() > size || deleted.size() > size;
+        if(upserted.size() > size) upserted = upserted.subList(0, size);
+        if(deleted.size() > size) deleted = deleted.subList(0, size);
+
+        if(!upserted.isEmpty()){
+            CertificateDTO last = upserted.get(upserted.size() - 1);
+            afterUpdatedAt = last.getUpdatedAt();
+            afterCertificateId = last.getId();
+        }
+        if(!deleted.isEmpty()){
+            DeletedCertificateRepository.DeletedView last = deleted.get(deleted.size() - 1);
+            afterDeletedAt = last.getDeletedAt();
+            afterDeletedId = last.getId();
+        }
+
+        return CertificateChangesDTO.builder()
+                .upserted(upserted)
+                .deleted(deleted.stream().map(DeletedCertificateRepository.DeletedView::getId).toList())
+                .nextCursor(CursorCodec.encode(afterUpdatedAt, afterCertificateId, afterDeletedAt, afterDeletedId))
+                .hasMore(hasMore)
+                .build();
+    }
+
+    // Certificates with an expiry date come first, those without one follow ordered by id in both directions.
+    // A cursor without an expiry date points into the second group.
+    private List<CertificateEntity> findByExpiryDate(Specification<CertificateEntity> filters, String cursor, boolean ascending, int size){
+        boolean hasCursor = cursor != null && !cursor.isBlank();
+        LocalDate lastExpiryDate = null;
+        Long lastId = null;
+        if(hasCursor){
+            String[] parts = CursorCodec.decode(cursor, 2);
+            try{
+                lastExpiryDate = parts[0] == null ? null : LocalDate.parse(parts[0]);
+                lastId = Long.valueOf(parts[1]);
+            }catch(DateTimeParseException | NumberFormatException e){
+                throw new InvalidRequestParameterException("Invalid cursor.");
+            }
+        }
+
+        List<CertificateEntity> certificates = new ArrayList<>(size);
+        if(!hasCursor || lastExpiryDate != null){
+            Specification<CertificateEntity> dated = Specification.allOf(filters,
+                    CertificateSpecifications.hasExpiryDate(true),
+                    hasCursor ? CertificateSpecifications.afterExpiryDate(lastExpiryDate, lastId, ascending) : null,
+                    CertificateSpecifications.orderedByExpiryDate(ascending));
+            certificates.addAll(certificateRepository.findBy(dated, q -> q.limit(size).all()));
+            if(certificates.size() == size) return certificates;
+            lastId = null;
+        }
+        Specification<CertificateEntity> undated = filters.and(CertificateSpecifications.hasExpiryDate(false));
+        certificates.addAll(findAfterId(undated, lastId, ascending, size - certificates.size()));
+        return certificates;
+    }
+
+    private List<CertificateEntity> findAfterId(Specification<CertificateEntity> filters, Long lastId, boolean ascending, int size){
+        Specification<CertificateEntity> specification = Specification.allOf(filters,
+                lastId == null ? null : CertificateSpecifications.afterId(lastId, ascending),
+                CertificateSpecifications.orderedById(ascending));
+        return certificateRepository.findBy(specification, q -> q.limit(size).all());
+    }
+
+    private Long decodeIdCursor(String cursor){
+        String[] parts = CursorCodec.decode(cursor, 1);
+        try{
+            return Long.valueOf(parts[0]);
+        }catch(NumberFormatException e){
+            throw new InvalidRequestParameterException("Invalid cursor.");
+        }
+    }
+
+    public List<CertificateDTO> getArchivedCertificatesForCurrentUser(long version){
+        Long profileId = profileService.getCurrentProfileId();
+        return profileListCache.getCertificates(profileId, true, version, () -> certificateRepository.findDTOsByProfileIdAndArchived(profileId, true));
     }
 
     // To update a particular certificate
     public CertificateDTO updateCertificate(Long certificateId, CertificateDTO certDto){
-        ProfileEntity profile = profileService.getCurrentProfile();
+        Long profileId = profileService.getCurrentProfileId();
 
-        CertificateEntity existingCert = certificateRepository.findByIdAndProfileId(certificateId, profile.getId())
+        CertificateEntity existingCert = certificateRepository.findByIdAndProfileId(certificateId, profileId)
                 .orElseThrow(() -> new ResourceNotFoundException("Certificate not found for id : " + certificateId));
 
+        // The reminder is only recomputed when its inputs change, otherwise a reminder sent today would be repeated
+        boolean rescheduleReminder = (certDto.getExpiryDate() != null && !certDto.getExpiryDate().equals(existingCert.getExpiryDate()))
+                || (certDto.getCategoryId() != null && !certDto.getCategoryId().equals(existingCert.getCategory().getId()))
+                || (Boolean.FALSE.equals(certDto.getIsArchived()) && Boolean.TRUE.equals(existingCert.getIsArchived()));
+
         // Fetch CategoryEntity by its ID (from DTO) and assign it
         if(certDto.getCategoryId() != null){
             CategoryEntity newCategory = categoryRepository.findById(certDto.getCategoryId())
@@ -102,14 +298,19 @@ public class CertificateService {
         if(certDto.getSignatureAlgorithm() != null) existingCert.setSignatureAlgorithm(certDto.getSignatureAlgorithm());
         if(certDto.getComments() != null) existingCert.setComments(certDto.getComments());
         if(certDto.getIsArchived() != null) existingCert.setIsArchived(certDto.getIsArchived());
+        if(rescheduleReminder){
+            existingCert.setNextNotifyOn(ReminderSchedule.nextReminder(existingCert.getExpiryDate(),
+                    reminderScheduleService.thresholdsOf(existingCert.getCategory().getId()), LocalDate.now(), true));
+        }
 
         certificateRepository.save(existingCert);
-        log.info("Certificate updated [id={}, profileId={}]", certificateId, profile.getId());
+        profileService.certificatesChanged(profileId);
+        log.info("Certificate updated [id={}, profileId={}]", certificateId, profileId);
         return toDTO(existingCert);
     }
 
     public void deleteCertificate(Long certificateId){
-        ProfileEntity profile = profileService.getCurrentProfile();
+        ProfileEntity profile = profileService.getCurrentProfileReference();
         CertificateEntity cert = certificateRepository.findByIdAndProfileId(certificateId, profile.getId())
                 .orElseThrow(() -> new ResourceNotFoundException("Certificate not found for id : " + certificateId));
 
@@ -118,6 +319,7 @@ public class CertificateService {
             log.info("Certificate deleted with id : {}",certificateId);
             deletedCertificateRepository.save(oldCert);
             certificateRepository.delete(cert);
+            profileService.certificatesChanged(profile.getId());
         }catch(Exception e){
             log.error("Unable to delete certificate",e);
         }
@@ -153,6 +355,7 @@ public class CertificateService {
                 .serialNumber(cert.getSerialNumber())
                 .signatureAlgorithm(cert.getSignatureAlgorithm())
                 .subjectAltName(cert.getSubjectAltName())
+                .fingerprint(cert.getFingerprint())
                 .profile(profile)
                 .build();
     }
@@ -173,6 +376,7 @@ public class CertificateService {
                 .isArchived(entity.getIsArchived())
                 .subjectAltName(entity.getSubjectAltName())
                 .comments(entity.getComments())
+                .fingerprint(entity.getFingerprint())
                 .build();
 
     }
@@ -0,0 +1,181 @@
+package in.certificatemanager.certWatch.service;
+
+import in.certificatemanager.certWatch.dto.EmailDTO;
+import in.certificatemanager.certWatch.util.TokenBucketRateLimiter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.HttpClientErrorException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+// Sends many emails concurrently on virtual threads, bounded by a concurrency cap and by
+// a token bucket matching the email provider's request quota. Emails without attachments are grouped
+// into batch requests. A failing message never affects the others.
+@Slf4j
+@Service
+public class EmailDispatcher {
+
+    private final EmailService emailService;
+    private final Semaphore concurrencyLimit;
+    private final TokenBucketRateLimiter rateLimiter;
+    private final Timer sentTimer;
+    private final Timer failedTimer;
+    private final Timer batchTimer;
+    private final int batchSize;
+
+    public record Outcome(EmailDTO message, Exception error) {
+        public boolean isSent() {
+            return error == null;
+        }
+    }
+
+    public EmailDispatcher(EmailService emailService,
+                           MeterRegistry meterRegistry,
+                           @Value("${certwatch.email.dispatch.concurrency:8}") int concurrency,
+                           @Value("${certwatch.email.dispatch.rate-per-second:10}") double ratePerSecond,
+                           @Value("${certwatch.email.dispatch.burst:10}") int burst,
+                           @Value("${certwatch.email.dispatch.batch-size:100}") int batchSize) {
+        this.emailService = emailService;
+        this.concurrencyLimit = new Semaphore(concurrency);
+        this.rateLimiter = new TokenBucketRateLimiter(ratePerSecond, burst);
+        this.batchSize = batchSize;
+        this.sentTimer = Timer.builder("certwatch.email.dispatch")
+                .description("Time taken to hand an email over to the provider")
+                .tag("outcome", "sent")
+                .register(meterRegistry);
+        this.failedTimer = Timer.builder("certwatch.email.dispatch")
+                .description("Time taken to hand an email over to the provider")
+                .tag("outcome", "failed")
+                .register(meterRegistry);
+        this.batchTimer = Timer.builder("certwatch.email.dispatch")
+                .description("Time taken to hand an email over to the provider")
+                .tag("outcome", "batch")
+                .register(meterRegistry);
+    }
+
+    // Blocks until every message was sent or failed, the outcomes are in the order of the messages.
+    // Messages without attachments go out in batches of batchSize per provider request.
+    public List<Outcome> dispatch(List<EmailDTO> messages) {
+        Outcome[] outcomes = new Outcome[messages.size()];
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Integer> batch = new ArrayList<>(batchSize);
+            for (int i = 0; i < messages.size(); i++) {
+                int index = i;
+                EmailDTO message = messages.get(i);
+                if (message.getAttachment() != null || batchSize <= 1) {
+                    executor.submit(() -> outcomes[index] = send(message));
+                    continue;
+                }
+                batch.add(index);
+                if (batch.size() == batchSize) {
+                    List<Integer> indexes = batch;
+                    executor.submit(() -> sendBatch(messages, indexes, outcomes));
+                    batch = new ArrayList<>(batchSize);
+                }
+            }
+            if (!batch.isEmpty()) {
+                List<Integer> indexes = batch;
+                executor.submit(() -> sendBatch(messages, indexes, outcomes));
+            }
+        }
+        // Closing the executor waited for all tasks, their writes to outcomes are visible here
+        List<Outcome> result = Arrays.asList(outcomes);
+        long failed = result.stream().filter(outcome -> !outcome.isSent()).count();
+        log.info("Dispatched {} emails, {} failed", result.size(), failed);
+        return result;
+    }
+
+    // One request for the whole batch. If the provider rejects it, every message is retried on its own so that
+    // one bad message does not fail the others. Failures of the provider itself fail the whole batch.
+    private void sendBatch(List<EmailDTO> messages, List<Integer> indexes, Outcome[] outcomes) {
+        if (indexes.size() == 1) {
+            outcomes[indexes.get(0)] = send(messages.get(indexes.get(0)));
+            return;
+        }
+        List<EmailDTO> batch = indexes.stream().map(messages::get).toList();
+        Exception error = sendInOneRequest(batch);
+        if (error != null && isRejection(error)) {
+            log.warn("Batch of {} emails was rejected, sending them one by one", batch.size(), error);
+            for (Integer index : indexes) {
+                outcomes[index] = send(messages.get(index));
+            }
+            return;
+        }
+        for (Integer index : indexes) {
+            outcomes[index] = new Outcome(messages.get(index), error);
+        }
+    }
+
+    // Returns the error, or null if the batch was handed over
+    private Exception sendInOneRequest(List<EmailDTO> batch) {
+        try {
+            concurrencyLimit.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return e;
+        }
+        long start = System.nanoTime();
+        try {
+            rateLimiter.acquire();
+            start = System.nanoTime();
+            emailService.sendBatch(batch);
+            batchTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return e;
+        } catch (Exception e) {
+            failedTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            log.error("Unable to send a batch of {} emails", batch.size(), e);
+            return e;
+        } finally {
+            concurrencyLimit.release();
+        }
+    }
+
+    // The provider answered with a 4xx other than throttling, the content of the request was not accepted
+    private static boolean isRejection(Exception error) {
+        return error.getCause() instanceof HttpClientErrorException clientError
+                && !(clientError instanceof HttpClientErrorException.TooManyRequests);
+    }
+
+    private Outcome send(EmailDTO message) {
+        try {
+            concurrencyLimit.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new Outcome(message, e);
+        }
+        long start = System.nanoTime();
+        try {
+            rateLimiter.acquire();
+            start = System.nanoTime();
+            if (message.getAttachment() != null) {
+                emailService.sendEmailWithAttachment(message.getTo(), message.getSubject(), message.getBody(),
+                        message.getAttachment(), message.getAttachmentName());
+            } else {
+                emailService.sendEmail(message.getTo(), message.getSubject(), message.getBody());
+            }
+            sentTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            return new Outcome(message, null);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new Outcome(message, e);
+        } catch (Exception e) {
+            failedTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            log.error("Unable to send email to {}", message.getTo(), e);
+            return new Outcome(message, e);
+        } finally {
+            concurrencyLimit.release();
+        }
+    }
+}
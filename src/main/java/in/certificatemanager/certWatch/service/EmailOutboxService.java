@@ -0,0 +1,173 @@
+package in.certificatemanager.certWatch.service;
+
+import in.certificatemanager.certWatch.dto.EmailDTO;
+import in.certificatemanager.certWatch.entity.EmailOutboxEntity;
+import in.certificatemanager.certWatch.repository.EmailOutboxRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+// Transactional outbox for emails. Callers only insert a row, within their own transaction, and return.
+// A scheduled worker claims due rows in batches, sends them through the EmailDispatcher and retries failures
+// with exponential backoff until they are dead-lettered.
+@Slf4j
+@Service
+public class EmailOutboxService {
+
+    private static final int MAX_ERROR_LENGTH = 1000;
+
+    private final EmailOutboxRepository emailOutboxRepository;
+    private final EmailDispatcher emailDispatcher;
+    private final TransactionTemplate transactionTemplate;
+    private final Counter deadLetteredCounter;
+
+    @Value("${certwatch.outbox.batch-size:100}")
+    private int batchSize;
+
+    @Value("${certwatch.outbox.max-attempts:8}")
+    private int maxAttempts;
+
+    @Value("${certwatch.outbox.initial-backoff:PT30S}")
+    private Duration initialBackoff;
+
+    @Value("${certwatch.outbox.max-backoff:PT1H}")
+    private Duration maxBackoff;
+
+    // How long a claimed email is hidden from other workers while it is being sent
+    @Value("${certwatch.outbox.lease:PT5M}")
+    private Duration lease;
+
+    @Value("${certwatch.outbox.retention:P7D}")
+    private Duration retention;
+
+    public EmailOutboxService(EmailOutboxRepository emailOutboxRepository,
+                              EmailDispatcher emailDispatcher,
+                              TransactionTemplate transactionTemplate,
+                              MeterRegistry meterRegistry) {
+        this.emailOutboxRepository = emailOutboxRepository;
+        this.emailDispatcher = emailDispatcher;
+        this.transactionTemplate = transactionTemplate;
+        this.deadLetteredCounter = Counter.builder("certwatch.email.outbox.dead")
+                .description("Emails given up on after the maximum number of attempts")
+                .register(meterRegistry);
+    }
+
+    // Joins the caller's transaction, so the email is only sent if the caller's changes were committed.
+    // Returns false if an email with the same dedup key was already queued.
+    @Transactional
+    public boolean enqueue(EmailDTO email, String dedupKey) {
+        if (dedupKey != null && emailOutboxRepository.existsByDedupKey(dedupKey)) {
+            log.info("Email with dedup key {} is already queued, skipping", dedupKey);
+            return false;
+        }
+        emailOutboxRepository.save(EmailOutboxEntity.builder()
+                .dedupKey(dedupKey)
+                .recipient(email.getTo())
+                .subject(email.getSubject())
+                .body(email.getBody())
+                .attachment(email.getAttachment())
+                .attachmentName(email.getAttachmentName())
+                .status(EmailOutboxEntity.Status.PENDING)
+                .attempts(0)
+                .nextAttemptAt(LocalDateTime.now())
+                .build());
+        return true;
+    }
+
+    @Scheduled(fixedDelayString = "${certwatch.outbox.poll-interval:PT5S}")
+    public void drainOutbox() {
+        List<EmailOutboxEntity> batch;
+        do {
+            batch = transactionTemplate.execute(status -> claimBatch());
+            if (batch == null || batch.isEmpty()) return;
+
+            List<EmailDispatcher.Outcome> outcomes = emailDispatcher.dispatch(batch.stream().map(this::toEmail).toList());
+            Map<Long, EmailDispatcher.Outcome> outcomeById = new HashMap<>();
+            for (int i = 0; i < batch.size(); i++) {
+                outcomeById.put(batch.get(i).getId(), outcomes.get(i));
+            }
+            transactionTemplate.executeWithoutResult(status -> recordOutcomes(outcomeById));
+        } while (batch.size() == batchSize);
+    }
+
+    // Locks due rows with skip locked and pushes their next attempt past the lease,
+    // so that concurrent workers pick different rows and a crashed worker's rows become due again
+    private List<EmailOutboxEntity> claimBatch() {
+        LocalDateTime now = LocalDateTime.now();
+        List<EmailOutboxEntity> due = emailOutboxRepository.findDueForUpdate(EmailOutboxEntity.Status.PENDING, now, Limit.of(batchSize));
+        due.forEach(email -> email.setNextAttemptAt(now.plus(lease)));
+        return due;
+    }
+
+    private void recordOutcomes(Map<Long, EmailDispatcher.Outcome> outcomeById) {
+        LocalDateTime now = LocalDateTime.now();
+        Map<Long, EmailOutboxEntity> emails = emailOutboxRepository.findAllById(outcomeById.keySet()).stream()
+                .collect(Collectors.toMap(EmailOutboxEntity::getId, Function.identity()));
+
+        outcomeById.forEach((id, outcome) -> {
+            EmailOutboxEntity email = emails.get(id);
+            if (email == null) return;
+            email.setAttempts(email.getAttempts() + 1);
+            if (outcome.isSent()) {
+                email.setStatus(EmailOutboxEntity.Status.SENT);
+                email.setSentAt(now);
+                email.setLastError(null);
+                return;
+            }
+            email.setLastError(errorMessage(outcome.error()));
+            if (email.getAttempts() >= maxAttempts) {
+                email.setStatus(EmailOutboxEntity.Status.DEAD);
+                deadLetteredCounter.increment();
+                log.error("Giving up on email {} to {} after {} attempts", id, email.getRecipient(), email.getAttempts());
+            } else {
+                email.setNextAttemptAt(now.plus(backoff(email.getAttempts())));
+            }
+        });
+    }
+
+    // initialBackoff, 2x, 4x, ... capped at maxBackoff
+    private Duration backoff(int attempts) {
+        Duration delay = initialBackoff.multipliedBy(1L << Math.min(attempts - 1, 20));
+        return delay.compareTo(maxBackoff) > 0 ? maxBackoff : delay;
+    }
+
+    @Scheduled(cron = "0 30 3 * * *", zone = "IST")
+    @Transactional
+    public void purgeSentEmails() {
+        LocalDateTime before = LocalDateTime.now().minus(retention);
+        int deleted = emailOutboxRepository.deleteByStatusAndSentAtBefore(EmailOutboxEntity.Status.SENT, before);
+        // Emails are given up on within hours of being queued, so dead ones are also kept for about the retention
+        int dead = emailOutboxRepository.deleteByStatusAndCreatedAtBefore(EmailOutboxEntity.Status.DEAD, before);
+        log.info("Purged {} sent and {} dead emails from the outbox", deleted, dead);
+    }
+
+    private EmailDTO toEmail(EmailOutboxEntity email) {
+        return EmailDTO.builder()
+                .to(email.getRecipient())
+                .subject(email.getSubject())
+                .body(email.getBody())
+                .attachment(email.getAttachment())
+                .attachmentName(email.getAttachmentName())
+                .build();
+    }
+
+    private static String errorMessage(Exception error) {
+        Throwable cause = error.getCause() != null ? error.getCause() : error;
+        String message = cause.getClass().getSimpleName() + ": " + cause.getMessage();
+        return message.length() > MAX_ERROR_LENGTH ? message.substring(0, MAX_ERROR_LENGTH) : message;
+    }
+}
@@ -1,11 +1,17 @@
 package in.certificatemanager.certWatch.service;
 
+import in.certificatemanager.certWatch.dto.EmailDTO;
+import in.certificatemanager.certWatch.util.CircuitBreaker;
 import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.*;
 import org.springframework.stereotype.Service;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
 import org.springframework.web.client.RestTemplate;
 
+import java.util.ArrayList;
 import java.util.Base64;
 import java.util.HashMap;
 import java.util.List;
@@ -24,9 +30,15 @@ public class EmailService {
     @Value("${brevo.sender.name}")
     private String fromName;
 
-    private static final String BREVO_URL = "https://api.brevo.com/v3/smtp/email";
+    @Value("${brevo.api.url:https://api.brevo.com/v3/smtp/email}")
+    private String brevoUrl;
 
-    private final RestTemplate restTemplate = new RestTemplate();
+    // Pooled, timeout bounded client and circuit breaker from HttpClientConfig
+    private final RestTemplate emailRestTemplate;
+    private final CircuitBreaker emailCircuitBreaker;
+
+    // Built once from the configured sender, immutable and shared by all requests
+    private Map<String, Object> sender;
 
     // ------------------------------------------------------------------
     // Simple HTML Email
@@ -48,6 +60,31 @@ public class EmailService {
         sendEmailInternal(to, subject, body, attachment, filename);
     }
 
+    // ------------------------------------------------------------------
+    // Many personalised emails in one request
+    // ------------------------------------------------------------------
+    // Every email becomes a message version with its own recipient, subject and content, the sender is sent once.
+    // Brevo accepts or rejects the request as a whole.
+    public void sendBatch(List<EmailDTO> emails) {
+        List<Map<String, Object>> versions = new ArrayList<>(emails.size());
+        for (EmailDTO email : emails) {
+            versions.add(Map.of(
+                    "to", List.of(Map.of("email", email.getTo())),
+                    "subject", email.getSubject(),
+                    "htmlContent", email.getBody()
+            ));
+        }
+
+        Map<String, Object> payload = new HashMap<>();
+        payload.put("sender", sender());
+        // The first email doubles as the default content that Brevo requires next to the versions
+        payload.put("subject", emails.get(0).getSubject());
+        payload.put("htmlContent", emails.get(0).getBody());
+        payload.put("messageVersions", versions);
+
+        post(payload);
+    }
+
     // ------------------------------------------------------------------
     // Core Brevo API Logic
     // ------------------------------------------------------------------
@@ -61,10 +98,7 @@ public class EmailService {
 
         Map<String, Object> payload = new HashMap<>();
 
-        payload.put("sender", Map.of(
-                "email", fromEmail,
-                "name", fromName
-        ));
+        payload.put("sender", sender());
 
         payload.put("to", List.of(
                 Map.of("email", to)
@@ -83,6 +117,17 @@ public class EmailService {
             ));
         }
 
+        post(payload);
+    }
+
+    private Map<String, Object> sender() {
+        if (sender == null) {
+            sender = Map.of("email", fromEmail, "name", fromName);
+        }
+        return sender;
+    }
+
+    private void post(Map<String, Object> payload) {
         HttpHeaders headers = new HttpHeaders();
         headers.setContentType(MediaType.APPLICATION_JSON);
         headers.set("api-key", apiKey);
@@ -90,13 +135,27 @@ public class EmailService {
         HttpEntity<Map<String, Object>> request =
                 new HttpEntity<>(payload, headers);
 
+        if (!emailCircuitBreaker.tryAcquirePermission()) {
+            throw new RuntimeException("Brevo is unavailable, email not sent");
+        }
+
         try {
-            restTemplate.postForEntity(
-                    BREVO_URL,
+            emailRestTemplate.postForEntity(
+                    brevoUrl,
                     request,
                     String.class
             );
+            emailCircuitBreaker.onSuccess();
+        } catch (ResourceAccessException | HttpServerErrorException | HttpClientErrorException.TooManyRequests e) {
+            // Timeouts, connection errors, 5xx and throttling mean the provider is in trouble
+            emailCircuitBreaker.onFailure();
+            throw new RuntimeException("Failed to send email via Brevo", e);
+        } catch (HttpClientErrorException e) {
+            // The provider answered, the request itself was rejected
+            emailCircuitBreaker.onSuccess();
+            throw new RuntimeException("Failed to send email via Brevo", e);
         } catch (Exception e) {
+            emailCircuitBreaker.onIgnored();
             throw new RuntimeException("Failed to send email via Brevo", e);
         }
     }
@@ -1,55 +1,74 @@
 package in.certificatemanager.certWatch.service;
 
 import in.certificatemanager.certWatch.dto.CertificateDTO;
+import in.certificatemanager.certWatch.repository.CertificateRepository;
+import lombok.RequiredArgsConstructor;
 import org.apache.poi.ss.usermodel.Row;
 import org.apache.poi.ss.usermodel.Sheet;
-import org.apache.poi.ss.usermodel.Workbook;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.io.IOException;
 import java.io.OutputStream;
 import java.util.List;
-import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 @Service
+@RequiredArgsConstructor
 public class ExcelService {
 
-    public void writeCertificatesToExcel(OutputStream os, List<CertificateDTO> certificates) throws IOException {
-        try(Workbook workbook = new XSSFWorkbook()){
+    // Header of the exported sheet, the CSV export uses the same columns in the same order
+    public static final List<String> COLUMNS = List.of("Sr No.", "Subject", "Issued By", "Category",
+            "Certificate Sr Number", "Issued Date", "Expiry Date", "Version", "Signature Algorithm", "SAN",
+            "Comments", "Archived");
+
+    // Rows kept in memory, older rows are flushed to a temporary file
+    private static final int ROW_WINDOW = 100;
+
+    private final CertificateRepository certificateRepository;
+    private final PlatformTransactionManager transactionManager;
+
+    // Memory use does not depend on the number of certificates: rows are read through a database cursor and
+    // only ROW_WINDOW of them are held by the workbook. The cursor and its connection are released before
+    // the workbook is written out, so a slow client does not hold a database connection.
+    public void writeCertificatesToExcel(OutputStream os, Long profileId) throws IOException {
+        SXSSFWorkbook workbook = new SXSSFWorkbook(ROW_WINDOW);
+        workbook.setCompressTempFiles(true);
+        try(workbook){
             Sheet sheet = workbook.createSheet("Certificates");
             Row header = sheet.createRow(0);
-            header.createCell(0).setCellValue("Sr No.");
-            header.createCell(1).setCellValue("Subject");
-            header.createCell(2).setCellValue("Issued By");
-            header.createCell(3).setCellValue("Category");
-            header.createCell(4).setCellValue("Certificate Sr Number");
-            header.createCell(5).setCellValue("Issued Date");
-            header.createCell(6).setCellValue("Expiry Date");
-            header.createCell(7).setCellValue("Version");
-            header.createCell(8).setCellValue("Signature Algorithm");
-            header.createCell(9).setCellValue("SAN");
-            header.createCell(10).setCellValue("Comments");
-            header.createCell(11).setCellValue("Archived");
-
-            IntStream.range(0, certificates.size()).forEach((c)-> {
-                CertificateDTO certificate = certificates.get(c);
-                Row row = sheet.createRow(c+1);
-                row.createCell(0).setCellValue(c+1);
-                row.createCell(1).setCellValue(certificate.getSubject() != null ? certificate.getSubject() : "N/A");
-                row.createCell(2).setCellValue(certificate.getIssuedBy() != null ? certificate.getIssuedBy() : "N/A");
-                row.createCell(3).setCellValue(certificate.getCategoryId() != null ? certificate.getCategoryId() : null);
-                row.createCell(4).setCellValue(certificate.getSerialNumber() != null ? certificate.getSerialNumber() : "N/A");
-                row.createCell(5).setCellValue(certificate.getIssuedDate() != null ? certificate.getIssuedDate().toString() : null);
-                row.createCell(6).setCellValue(certificate.getExpiryDate() != null ? certificate.getExpiryDate().toString() : null);
-                row.createCell(7).setCellValue(certificate.getVersion() != 0 ? certificate.getVersion() : null);
-                row.createCell(8).setCellValue(certificate.getSignatureAlgorithm() != null ? certificate.getSignatureAlgorithm() : "N/A");
-                row.createCell(9).setCellValue(certificate.getSubjectAltName() != null ? certificate.getSubjectAltName() : "N/A");
-                row.createCell(10).setCellValue(certificate.getComments() != null ? certificate.getComments() : "N/A");
-                row.createCell(11).setCellValue(certificate.getIsArchived() != null ? certificate.getIsArchived() : null);
+            for (int i = 0; i < COLUMNS.size(); i++) {
+                header.createCell(i).setCellValue(COLUMNS.get(i));
+            }
 
+            TransactionTemplate readOnly = new TransactionTemplate(transactionManager);
+            readOnly.setReadOnly(true);
+            readOnly.executeWithoutResult(status -> {
+                try(Stream<CertificateDTO> certificates = certificateRepository.streamDTOsByProfileId(profileId)){
+                    int[] rowNum = {0};
+                    certificates.forEach(certificate -> writeRow(sheet.createRow(++rowNum[0]), rowNum[0], certificate));
+                }
             });
             workbook.write(os);
+        }finally{
+            workbook.dispose();
         }
     }
+
+    private void writeRow(Row row, int srNo, CertificateDTO certificate) {
+        row.createCell(0).setCellValue(srNo);
+        row.createCell(1).setCellValue(certificate.getSubject() != null ? certificate.getSubject() : "N/A");
+        row.createCell(2).setCellValue(certificate.getIssuedBy() != null ? certificate.getIssuedBy() : "N/A");
+        row.createCell(3).setCellValue(certificate.getCategoryId() != null ? certificate.getCategoryId() : null);
+        row.createCell(4).setCellValue(certificate.getSerialNumber() != null ? certificate.getSerialNumber() : "N/A");
+        row.createCell(5).setCellValue(certificate.getIssuedDate() != null ? certificate.getIssuedDate().toString() : null);
+        row.createCell(6).setCellValue(certificate.getExpiryDate() != null ? certificate.getExpiryDate().toString() : null);
+        row.createCell(7).setCellValue(certificate.getVersion() != 0 ? certificate.getVersion() : null);
+        row.createCell(8).setCellValue(certificate.getSignatureAlgorithm() != null ? certificate.getSignatureAlgorithm() : "N/A");
+        row.createCell(9).setCellValue(certificate.getSubjectAltName() != null ? certificate.getSubjectAltName() : "N/A");
+        row.createCell(10).setCellValue(certificate.getComments() != null ? certificate.getComments() : "N/A");
+        row.createCell(11).setCellValue(certificate.getIsArchived() != null ? certificate.getIsArchived() : null);
+    }
 }
@@ -8,23 +8,32 @@ import org.springframework.stereotype.Service;
 import org.springframework.web.client.RestTemplate;
 import lombok.extern.slf4j.Slf4j;
 
+import java.time.Duration;
+
 @Service
 @RequiredArgsConstructor
 @Slf4j
 public class HealthCheckCronService {
 
-    private final RestTemplate restTemplate = new RestTemplate();
+    // Pooled, timeout bounded client from HttpClientConfig
+    private final RestTemplate healthCheckRestTemplate;
+    private final JobLockService jobLockService;
 
     @Value("${app.activation.url}")
     private String baseUrl;
 
+    // One instance checks per schedule, the lock is kept for a minute so that instances firing a little later skip it
     @Scheduled(cron = "0 */5 * * * *")
     public void checkHealth() {
+        jobLockService.runLocked("health-check", Duration.ofMinutes(4), Duration.ofMinutes(1), this::pingHealthEndpoint);
+    }
+
+    private void pingHealthEndpoint() {
         String healthUrl = baseUrl + "/api/v1.0/health";
 
         try {
             ResponseEntity<String> response =
-                    restTemplate.getForEntity(healthUrl, String.class);
+                    healthCheckRestTemplate.getForEntity(healthUrl, String.class);
 
             if (response.getStatusCode().is2xxSuccessful()) {
                 log.info("--------Health check successful--------");
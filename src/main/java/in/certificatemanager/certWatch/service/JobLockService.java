@@ -0,0 +1,90 @@
+package in.certificatemanager.certWatch.service;
+
+import in.certificatemanager.certWatch.repository.JobLockRepository;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+// Makes a scheduled job run on one instance only when several instances share the database.
+// The lock is a lease in tbl_job_locks, a node that dies while holding it blocks the job until the lease runs out.
+@Slf4j
+@Service
+public class JobLockService {
+
+    private final JobLockRepository jobLockRepository;
+
+    // Identifies this instance in the lock and partition tables
+    @Getter
+    private final String nodeId;
+
+    public JobLockService(JobLockRepository jobLockRepository,
+                          @Value("${certwatch.jobs.node-id:}") String nodeId) {
+        this.jobLockRepository = jobLockRepository;
+        this.nodeId = nodeId.isBlank() ? defaultNodeId() : nodeId;
+    }
+
+    // Held lock or partition lease. A long running job extends it at every checkpoint and stops as soon as that fails,
+    // since another instance may then already work on the same run.
+    @FunctionalInterface
+    public interface Lease {
+        // True if the lease was still held and now lasts for another full period
+        boolean extend();
+    }
+
+    // Runs the task if no other instance holds the lock. The lock is held for at most lockAtMostFor, so a job
+    // must finish within it, and for at least lockAtLeastFor, so that instances whose schedule fires a little
+    // later do not run the job again. Returns false if the task did not run.
+    public boolean runLocked(String name, Duration lockAtMostFor, Duration lockAtLeastFor, Runnable task) {
+        return runLocked(name, lockAtMostFor, lockAtLeastFor, lease -> task.run());
+    }
+
+    // Same as above for a task that may outlive lockAtMostFor: every Lease.extend() holds the lock for another
+    // lockAtMostFor from then on
+    public boolean runLocked(String name, Duration lockAtMostFor, Duration lockAtLeastFor, Consumer<Lease> task) {
+        LocalDateTime lockedAt = LocalDateTime.now();
+        if (!tryLock(name, lockedAt, lockedAt.plus(lockAtMostFor))) {
+            log.info("Job {} skipped, it is locked", name);
+            return false;
+        }
+        try {
+            task.accept(() -> jobLockRepository.extend(name, nodeId, LocalDateTime.now().plus(lockAtMostFor)) > 0);
+            return true;
+        } finally {
+            LocalDateTime now = LocalDateTime.now();
+            LocalDateTime minimumUntil = lockedAt.plus(lockAtLeastFor);
+            jobLockRepository.release(name, nodeId, now.isAfter(minimumUntil) ? now : minimumUntil);
+        }
+    }
+
+    private boolean tryLock(String name, LocalDateTime now, LocalDateTime until) {
+        if (jobLockRepository.tryAcquire(name, nodeId, now, until) > 0) return true;
+        if (jobLockRepository.existsById(name)) return false;
+        try {
+            jobLockRepository.insertLocked(name, nodeId, now, until);
+            return true;
+        } catch (DataIntegrityViolationException e) {
+            // Another instance created the lock first and holds it
+            return false;
+        }
+    }
+
+    private static String defaultNodeId() {
+        String host;
+        try {
+            host = InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException e) {
+            host = "unknown";
+        }
+        // Several application contexts in one JVM (or containers with the same host name) still get their own id
+        return host + "-" + UUID.randomUUID().toString().substring(0, 8);
+    }
+}
@@ -0,0 +1,87 @@
+package in.certificatemanager.certWatch.service;
+
+import in.certificatemanager.certWatch.entity.JobPartitionEntity;
+import in.certificatemanager.certWatch.repository.JobPartitionRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+// Splits one run of a job into profile id ranges that the instances claim one by one,
+// so that every instance started for the run takes a share of the work
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class JobPartitionService {
+
+    private static final int RETENTION_DAYS = 30;
+
+    private final JobPartitionRepository jobPartitionRepository;
+    private final JobLockService jobLockService;
+    private final TransactionTemplate transactionTemplate;
+
+    public record Partition(Long id, int partitionNo, long fromProfileId, long toProfileId) {}
+
+    // Creates the partitions of a run unless another instance already did. The ranges split 0..maxProfileId into
+    // equal parts, the last one is open ended for profiles created after the split.
+    public void createPartitions(String jobName, LocalDate runDate, int count, long maxProfileId) {
+        if (jobPartitionRepository.existsRun(jobName, runDate)) return;
+
+        long width = Math.max(1, (maxProfileId + count - 1) / count);
+        List<JobPartitionEntity> partitions = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            partitions.add(JobPartitionEntity.builder()
+                    .jobName(jobName)
+                    .runDate(runDate)
+                    .partitionNo(i)
+                    .fromProfileId(i * width)
+                    .toProfileId(i == count - 1 ? Long.MAX_VALUE : (i + 1) * width)
+                    .status(JobPartitionEntity.Status.PENDING)
+                    .build());
+        }
+        try {
+            // All partitions or none, an instance racing us fails on the unique (job_name, run_date, partition_no)
+            transactionTemplate.executeWithoutResult(status -> jobPartitionRepository.saveAll(partitions));
+            jobPartitionRepository.deleteByRunDateBefore(runDate.minusDays(RETENTION_DAYS));
+            log.info("Created {} partitions for job {} on {}", count, jobName, runDate);
+        } catch (DataIntegrityViolationException e) {
+            log.info("Partitions for job {} on {} were created by another instance", jobName, runDate);
+        }
+    }
+
+    // The next partition nobody works on, or whose lease expired. Empty when the whole run is taken.
+    public Optional<Partition> claimNext(String jobName, LocalDate runDate, Duration lease) {
+        LocalDateTime now = LocalDateTime.now();
+        for (JobPartitionEntity candidate : jobPartitionRepository.findClaimable(jobName, runDate, now)) {
+            if (jobPartitionRepository.claim(candidate.getId(), jobLockService.getNodeId(), now, now.plus(lease)) > 0) {
+                return Optional.of(new Partition(candidate.getId(), candidate.getPartitionNo(),
+                        candidate.getFromProfileId(), candidate.getToProfileId()));
+            }
+        }
+        return Optional.empty();
+    }
+
+    // True while a partition of the run is waiting or was left behind by an instance that stopped
+    public boolean hasClaimable(String jobName, LocalDate runDate) {
+        return !jobPartitionRepository.findClaimable(jobName, runDate, LocalDateTime.now()).isEmpty();
+    }
+
+    // Lease of a claimed partition, each extension holds it for another lease period
+    public JobLockService.Lease leaseOf(Partition partition, Duration lease) {
+        return () -> jobPartitionRepository.extendLease(partition.id(), jobLockService.getNodeId(), LocalDateTime.now().plus(lease)) > 0;
+    }
+
+    public void complete(Partition partition) {
+        if (jobPartitionRepository.complete(partition.id(), jobLockService.getNodeId(), LocalDateTime.now()) == 0) {
+            log.warn("Partition {} was taken over by another instance before it completed", partition.id());
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package in.certificatemanager.certWatch.service;
+
+import in.certificatemanager.certWatch.entity.JobRunEntity;
+import in.certificatemanager.certWatch.repository.JobRunRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+// Ledger of job runs with their checkpoints. The caller must hold the job lock or the partition of the run,
+// so a run is never worked on by two instances at once.
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class JobRunService {
+
+    private static final int RETENTION_DAYS = 30;
+
+    private final JobRunRepository jobRunRepository;
+    private final JobLockService jobLockService;
+
+    // The run of the day for the scope, an interrupted run is returned with its last checkpoint
+    public JobRunEntity start(String jobName, LocalDate runDate, String scope) {
+        Optional<JobRunEntity> existing = jobRunRepository.findRun(jobName, runDate, scope);
+        if (existing.isPresent()) {
+            JobRunEntity run = existing.get();
+            if (run.getStatus() == JobRunEntity.Status.RUNNING) {
+                log.info("Resuming job {} [runDate={}, scope={}, lastProfileId={}, processed={}]",
+                        jobName, runDate, scope, run.getLastProfileId(), run.getProcessed());
+                run.setLastNode(jobLockService.getNodeId());
+                return jobRunRepository.save(run);
+            }
+            return run;
+        }
+        jobRunRepository.deleteByRunDateBefore(runDate.minusDays(RETENTION_DAYS));
+        return jobRunRepository.save(JobRunEntity.builder()
+                .jobName(jobName)
+                .runDate(runDate)
+                .scope(scope)
+                .status(JobRunEntity.Status.RUNNING)
+                .lastNode(jobLockService.getNodeId())
+                .startedAt(LocalDateTime.now())
+                .build());
+    }
+
+    // Must be called in the transaction that commits the work up to lastProfileId
+    public void checkpoint(JobRunEntity run, long lastProfileId, int processed) {
+        jobRunRepository.checkpoint(run.getId(), lastProfileId, processed, LocalDateTime.now());
+    }
+
+    public void complete(JobRunEntity run) {
+        jobRunRepository.finish(run.getId(), JobRunEntity.Status.COMPLETED, LocalDateTime.now());
+    }
+
+    public boolean hasUnfinishedRun(String jobName, LocalDate runDate) {
+        return jobRunRepository.existsByStatus(jobName, runDate, JobRunEntity.Status.RUNNING);
+    }
+}
@@ -1,184 +1,273 @@
 package in.certificatemanager.certWatch.service;
 
-import in.certificatemanager.certWatch.dto.CertificateDTO;
-import in.certificatemanager.certWatch.entity.ProfileEntity;
+import in.certificatemanager.certWatch.dto.EmailDTO;
+import in.certificatemanager.certWatch.dto.ExpiringCertificateDTO;
+import in.certificatemanager.certWatch.entity.JobRunEntity;
+import in.certificatemanager.certWatch.entity.ReminderLedgerEntity;
+import in.certificatemanager.certWatch.repository.CertificateRepository;
 import in.certificatemanager.certWatch.repository.ProfileRepository;
+import in.certificatemanager.certWatch.repository.ReminderLedgerRepository;
+import in.certificatemanager.certWatch.util.HtmlTemplate;
+import in.certificatemanager.certWatch.util.ReminderSchedule;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.time.Duration;
 import java.time.LocalDate;
-import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
 
 @Service
 @RequiredArgsConstructor
 @Slf4j
 public class NotificationService {
 
+    private final EmailOutboxService emailOutboxService;
+    private final TransactionTemplate transactionTemplate;
+    private final CertificateRepository certificateRepository;
     private final ProfileRepository profileRepository;
-    private final EmailService emailService;
-    private final CertificateService certificateService;
+    private final JobLockService jobLockService;
+    private final JobPartitionService jobPartitionService;
+    private final JobRunService jobRunService;
+    private final ReminderLedgerRepository reminderLedgerRepository;
+
+    private static final String REMINDER_JOB = "expiry-reminder";
+    private static final int LEDGER_RETENTION_DAYS = 90;
 
     record ExpiryEntry(String subject, LocalDate expiryDate) {}
 
+    // The sections of the reminder email, parsed once
+    private static final Map<String, String> REMINDER_SECTIONS = HtmlTemplate.loadSections("templates/email/expiry-reminder.html");
+    private static final HtmlTemplate GREETING = HtmlTemplate.compile(REMINDER_SECTIONS.get("greeting"), "name");
+    private static final HtmlTemplate THRESHOLD = HtmlTemplate.compile(REMINDER_SECTIONS.get("threshold"), "days");
+    private static final HtmlTemplate GREETING_END = HtmlTemplate.compile(REMINDER_SECTIONS.get("greeting-end"));
+    private static final HtmlTemplate TABLE_START = HtmlTemplate.compile(REMINDER_SECTIONS.get("table-start"), "days");
+    private static final HtmlTemplate TABLE_ROW = HtmlTemplate.compile(REMINDER_SECTIONS.get("table-row"), "subject", "expiryDate");
+    private static final HtmlTemplate TABLE_END = HtmlTemplate.compile(REMINDER_SECTIONS.get("table-end"));
+    private static final HtmlTemplate FOOTER = HtmlTemplate.compile(REMINDER_SECTIONS.get("footer"), "frontendUrl");
+
     @Value("${certwatch.frontend.url}")
     private String frontendUrl;
 
-    // This function will return a list of 3 lists for 30, 60, and 90 days of expiry certificates.
-    private List<List<ExpiryEntry>> listsOfExpiringCerts(List<CertificateDTO> certs){
+    @Value("${certwatch.reminder.chunk-size:500}")
+    private int chunkSize;
 
-        List<ExpiryEntry> expiringIn30 = new ArrayList<>();
-        List<ExpiryEntry> expiringIn60 = new ArrayList<>();
-        List<ExpiryEntry> expiringIn90 = new ArrayList<>();
+    // 0 runs the job on one instance, otherwise the profiles are split into this many ranges shared by all instances
+    @Value("${certwatch.reminder.partitions:0}")
+    private int partitions;
 
-        LocalDate today = LocalDate.now();
+    @Value("${certwatch.reminder.partition-lease:PT15M}")
+    private Duration partitionLease;
 
-        for(CertificateDTO cert : certs){
-            LocalDate expiryDate = cert.getExpiryDate();
-            long daysLeft = ChronoUnit.DAYS.between(today, expiryDate);
-            ExpiryEntry entry = new ExpiryEntry(cert.getSubject(),expiryDate);
+    @Value("${certwatch.reminder.lock-at-most-for:PT1H}")
+    private Duration lockAtMostFor;
 
-            if(daysLeft < 0) continue;
+    @Value("${certwatch.reminder.lock-at-least-for:PT5M}")
+    private Duration lockAtLeastFor;
 
-            if(daysLeft == 30){
-                expiringIn30.add(entry);
-            }else if(daysLeft == 60){
-                expiringIn60.add(entry);
-            }else if(daysLeft == 90){
-                expiringIn90.add(entry);
-            }
+    // Appends the reminder email of one profile to the buffer, the certificates are grouped by threshold.
+    // Package-private and static for the render timing test.
+    static void renderReminder(StringBuilder html, String name, SortedMap<Integer, List<ExpiryEntry>> byThreshold, String frontendUrl) {
+        GREETING.render(html, name);
+        int i = 0;
+        for (Integer days : byThreshold.keySet()) {
+            html.append(i++ == 0 ? " " : ", ");
+            THRESHOLD.render(html, days);
         }
+        html.append(' ');
+        GREETING_END.render(html);
+
+        // Only thresholds with certificates get a table
+        byThreshold.forEach((days, entries) -> {
+            TABLE_START.render(html, days);
+            for (ExpiryEntry entry : entries) {
+                TABLE_ROW.render(html, entry.subject(), entry.expiryDate());
+            }
+            TABLE_END.render(html);
+        });
 
-        List<List<ExpiryEntry>> lists = new ArrayList<>();
-        lists.add(expiringIn30);
-        lists.add(expiringIn60);
-        lists.add(expiringIn90);
-        return lists;
+        FOOTER.render(html, frontendUrl);
     }
 
+    // Only certificates whose precomputed reminder date has come are read, through the (is_archived, next_notify_on)
+    // index and in keyset chunks. Days on which the job did not run are caught up on the next run.
+    // Every instance fires the job, either one of them runs it under the job lock or all of them share the partitions.
+    @Scheduled(cron = "0 0 8 * * *", zone = "IST")
+    public void sendDailyExpiryReminder(){
+        LocalDate today = LocalDate.now();
+        if(partitions > 0){
+            sendPartitionedReminders(today);
+        }else{
+            jobLockService.runLocked(REMINDER_JOB, lockAtMostFor, lockAtLeastFor,
+                    lease -> sendReminders(today, "all", 0L, Long.MAX_VALUE, lease));
+        }
+    }
 
-    private static void appendTable(
-            StringBuilder body,
-            String heading,
-            List<ExpiryEntry> entries
-    ) {
+    // Picks up a run of today that was interrupted by a restart or a failure, once its lock or partition lease ran out
+    @Scheduled(fixedDelayString = "${certwatch.reminder.resume-check-interval:PT10M}")
+    public void resumeInterruptedReminders(){
+        LocalDate today = LocalDate.now();
+        boolean interrupted = partitions > 0
+                ? jobPartitionService.hasClaimable(REMINDER_JOB, today)
+                : jobRunService.hasUnfinishedRun(REMINDER_JOB, today);
+        if(interrupted){
+            sendDailyExpiryReminder();
+        }
+    }
 
-        if (entries == null || entries.isEmpty()) {
-            body.append("<b>").append(heading).append("</b><br>");
-            body.append("No certificates found.<br><br>");
-            return;
+    private void sendPartitionedReminders(LocalDate today){
+        jobPartitionService.createPartitions(REMINDER_JOB, today, partitions, profileRepository.findMaxId());
+        Optional<JobPartitionService.Partition> partition;
+        while((partition = jobPartitionService.claimNext(REMINDER_JOB, today, partitionLease)).isPresent()){
+            JobPartitionService.Partition claimed = partition.get();
+            if(sendReminders(today, "partition-" + claimed.partitionNo(), claimed.fromProfileId(), claimed.toProfileId(),
+                    jobPartitionService.leaseOf(claimed, partitionLease))){
+                jobPartitionService.complete(claimed);
+            }
         }
+    }
 
-        body.append("<b>").append(heading).append("</b><br>");
-
-        body.append("<table border='1' cellpadding='5' cellspacing='0'>");
-        body.append("<tr>");
-        body.append("<th>Subject</th>");
-        body.append("<th>Expiry Date</th>");
-        body.append("</tr>");
-
-        for (ExpiryEntry entry : entries) {
-            body.append("<tr>");
-            body.append("<td>").append(entry.subject()).append("</td>");
-            body.append("<td>")
-                    .append(entry.expiryDate().toString())
-                    .append("</td>");
-            body.append("</tr>");
+    // Reminders for the profiles with fromProfileId < id <= toProfileId, continuing after the checkpoint
+    // of the run when it was interrupted. Returns false if the lease was lost and the run was left unfinished.
+    private boolean sendReminders(LocalDate today, String scope, long fromProfileId, long toProfileId, JobLockService.Lease lease){
+        JobRunEntity run = jobRunService.start(REMINDER_JOB, today, scope);
+        if(run.getStatus() == JobRunEntity.Status.COMPLETED){
+            log.info("Job sendDailyExpiryReminder() already completed today [scope={}]", scope);
+            return true;
         }
+        long lastProfileId = run.getLastProfileId() != null ? Math.max(fromProfileId, run.getLastProfileId()) : fromProfileId;
+        log.info("Job started: sendDailyExpiryReminder() [scope={}, profiles {}..{}]", scope, lastProfileId + 1, toProfileId);
+
+        long lastCertificateId = Long.MAX_VALUE;
+        int queued = 0;
+        // Certificates of the current profile, a profile can continue into the next chunk
+        List<ExpiringCertificateDTO> profileCerts = new ArrayList<>();
+
+        List<ExpiringCertificateDTO> chunk;
+        do{
+            chunk = certificateRepository.findDueForReminder(today, lastProfileId, lastCertificateId, toProfileId, Limit.of(chunkSize));
+            List<List<ExpiringCertificateDTO>> reminders = new ArrayList<>();
+            for(ExpiringCertificateDTO cert : chunk){
+                if(!profileCerts.isEmpty() && !profileCerts.get(0).getProfileId().equals(cert.getProfileId())){
+                    reminders.add(List.copyOf(profileCerts));
+                    profileCerts.clear();
+                }
+                profileCerts.add(cert);
+            }
+            if(!chunk.isEmpty()){
+                ExpiringCertificateDTO last = chunk.get(chunk.size() - 1);
+                lastProfileId = last.getProfileId();
+                lastCertificateId = last.getCertificateId();
+            }
+            if(chunk.size() < chunkSize && !profileCerts.isEmpty()){
+                reminders.add(List.copyOf(profileCerts));
+            }
 
-        body.append("</table><br><br>");
-    }
+            // The reminders of a chunk are queued, recorded in the ledger, their certificates moved on to their next
+            // reminder date and the checkpoint written in one transaction. The outbox worker sends them.
+            // The lease is extended first and its row stays locked until the chunk commits. If another instance took
+            // the run over in the meantime the chunk is rolled back and this instance stops.
+            Integer chunkQueued = transactionTemplate.execute(status -> {
+                if(!lease.extend()){
+                    status.setRollbackOnly();
+                    return null;
+                }
+                int count = queueReminders(reminders, today);
+                if(!reminders.isEmpty()){
+                    List<ExpiringCertificateDTO> lastReminder = reminders.get(reminders.size() - 1);
+                    jobRunService.checkpoint(run, lastReminder.get(0).getProfileId(), count);
+                }
+                return count;
+            });
+            if(chunkQueued == null){
+                log.warn("Job stopped: sendDailyExpiryReminder() lost its lease to another instance [scope={}, queued={}]", scope, queued);
+                return false;
+            }
+            queued += chunkQueued;
+        }while(chunk.size() == chunkSize);
 
-    private String dailyEmailTemplate(String name, List<ExpiryEntry> expiringIn30, List<ExpiryEntry> expiringIn60, List<ExpiryEntry> expiringIn90) {
-        StringBuilder html = new StringBuilder();
-
-        // ===== Email Wrapper =====
-        html.append("""
-            <html>
-            <body style="font-family: Arial, sans-serif; background-color:#f5f7fb; padding:20px;">
-              <div style="max-width:700px; margin:auto; background:#ffffff;
-                          padding:24px; border-radius:8px;">
-        """);
-
-        // ===== Greeting =====
-        html.append("""
-            <p style="font-size:15px; color:#333;">
-              Hi <strong>""" + name + """
-                 </strong>,
-            </p>
-        """);
-
-        // ===== Intro =====
-        html.append("""
-            <p style="font-size:14px; color:#555;">
-              This is a friendly reminder to review your certificates that are
-              approaching their expiry dates.
-            </p>
-            <p style="font-size:14px; color:#555;">
-              Below is a categorized list of certificates expiring in the next
-              <strong>30</strong>, <strong>60</strong>, and <strong>90</strong> days.
-            </p>
-        """);
-
-        // ===== Tables =====
-        // Only if the list is non-empty, the table will be added to the email.
-        if(!expiringIn30.isEmpty()) appendTable(html, "Expiring in 30 Days", expiringIn30);
-        if(!expiringIn60.isEmpty()) appendTable(html, "Expiring in 60 Days", expiringIn60);
-        if(!expiringIn90.isEmpty()) appendTable(html, "Expiring in 90 Days", expiringIn90);
-
-        // ===== Footer =====
-        html.append("""
-                <p style="font-size:13px; color:#555; margin-top:10px;">
-              You can visit <a href="https://cert-watch-zeta.vercel.app">Cert Watch</a> for more information about the certificates.
-            </p>
-                """);
-
-        html.append("""
-            <p style="font-size:13px; color:#777; margin-top:10px;">
-              Please take necessary action to renew or replace certificates
-              before they expire.
-            </p>
-
-            <p style="font-size:13px; color:#777;">
-              Regards,<br>
-              <strong>CertWatch Team</strong>
-            </p>
-        """);
-
-        // ===== Close Wrapper =====
-        html.append("""
-              </div>
-            </body>
-            </html>
-        """);
-
-        return html.toString();
+        jobRunService.complete(run);
+        reminderLedgerRepository.deleteByReminderDateBefore(today.minusDays(LEDGER_RETENTION_DAYS));
+        log.info("Job ended: sendDailyExpiryReminder() [scope={}, queued={}]", scope, queued);
+        return true;
     }
 
-    @Scheduled(cron = "0 0 8 * * *", zone = "IST")
-    public void sendDailyExpiryReminder(){
-        log.info("Job started: sendDailyExpiryReminder()");
-        List<ProfileEntity> profiles = profileRepository.findAll();
-
-        for(ProfileEntity profile : profiles){
-            List<CertificateDTO> allCertificates = certificateService.getUnarchivedCertificatesForAnyUser(profile);
-            List<List<ExpiryEntry>> tableData = listsOfExpiringCerts(allCertificates);
-
-            // If there are no expiring certificates, then no email will be sent.
-            if(!(tableData.get(0).isEmpty() && tableData.get(1).isEmpty() && tableData.get(2).isEmpty()))
-            {
-                String body = dailyEmailTemplate(profile.getFullName(),tableData.get(0),tableData.get(1),tableData.get(2));
-                emailService.sendEmail(profile.getEmail(),"A friendly reminder to check expiring certificates", body);
-                log.info("Email successfully sent to {}", profile.getEmail());
+    private int queueReminders(List<List<ExpiringCertificateDTO>> reminders, LocalDate today){
+        if(reminders.isEmpty()) return 0;
+        Map<Long, Set<Integer>> sentToday = new HashMap<>();
+        reminderLedgerRepository.findSent(reminders.stream().map(profileCerts -> profileCerts.get(0).getProfileId()).toList(), today)
+                .forEach(sent -> sentToday.computeIfAbsent(sent.getProfileId(), id -> new HashSet<>()).add(sent.getThreshold()));
+
+        int queued = 0;
+        Map<LocalDate, List<Long>> nextReminders = new HashMap<>();
+        List<ReminderLedgerEntity> ledger = new ArrayList<>();
+        // One buffer for all reminders of the chunk, it grows to the largest email and is reused after that
+        StringBuilder html = new StringBuilder(8192);
+        for(List<ExpiringCertificateDTO> profileCerts : reminders){
+            ExpiringCertificateDTO owner = profileCerts.get(0);
+            Set<Integer> alreadySent = sentToday.getOrDefault(owner.getProfileId(), Set.of());
+
+            // Groups the certificates by the threshold whose window they are in, smallest threshold first.
+            // Certificates that are not within any threshold (anymore) are left out.
+            SortedMap<Integer, List<ExpiryEntry>> byThreshold = new TreeMap<>();
+            for(ExpiringCertificateDTO cert : profileCerts){
+                List<Integer> thresholds = ReminderSchedule.parse(cert.getReminderDays());
+                Integer threshold = ReminderSchedule.currentThreshold(cert.getExpiryDate(), thresholds, today);
+                // This threshold was already reminded today, the certificate stays due and goes into tomorrow's reminder
+                if(threshold != null && alreadySent.contains(threshold)) continue;
+
+                LocalDate next;
+                if(threshold == null){
+                    next = ReminderSchedule.nextReminder(cert.getExpiryDate(), thresholds, today, false);
+                }else{
+                    byThreshold.computeIfAbsent(threshold, days -> new ArrayList<>())
+                            .add(new ExpiryEntry(cert.getSubject(), cert.getExpiryDate()));
+                    next = ReminderSchedule.nextReminderAfter(cert.getExpiryDate(), thresholds, today, threshold);
+                }
+                nextReminders.computeIfAbsent(next, date -> new ArrayList<>()).add(cert.getCertificateId());
             }
 
+            if(byThreshold.isEmpty()) continue;
+            html.setLength(0);
+            renderReminder(html, owner.getFullName(), byThreshold, frontendUrl);
+            if(emailOutboxService.enqueue(reminderEmail(owner, html.toString()), reminderKey(owner, today, byThreshold.keySet()))){
+                queued++;
+            }
+            byThreshold.keySet().forEach(threshold -> ledger.add(ReminderLedgerEntity.builder()
+                    .profileId(owner.getProfileId())
+                    .reminderDate(today)
+                    .threshold(threshold)
+                    .build()));
         }
-        log.info("Job ended: sendDailyExpiryReminder()");
+        reminderLedgerRepository.saveAll(ledger);
+        nextReminders.forEach((date, ids) -> certificateRepository.updateNextNotifyOn(ids, date));
+        return queued;
     }
 
+    // One reminder per profile, day and set of thresholds, the ledger keeps a threshold from being reminded twice a day
+    private static String reminderKey(ExpiringCertificateDTO owner, LocalDate today, Set<Integer> thresholds){
+        return "expiry-reminder:" + owner.getProfileId() + ":" + today + ":"
+                + thresholds.stream().map(String::valueOf).collect(Collectors.joining(","));
+    }
 
+    private static EmailDTO reminderEmail(ExpiringCertificateDTO owner, String body){
+        return EmailDTO.builder()
+                .to(owner.getEmail())
+                .subject("A friendly reminder to check expiring certificates")
+                .body(body)
+                .build();
+    }
 }
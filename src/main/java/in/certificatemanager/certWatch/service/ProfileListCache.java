@@ -0,0 +1,87 @@
+package in.certificatemanager.certWatch.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import in.certificatemanager.certWatch.dto.CategoryDTO;
+import in.certificatemanager.certWatch.dto.CertificateDTO;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.function.Supplier;
+
+// In-process cache of the certificate and category lists of each profile, so that polling dashboards are served
+// without a query. Lists are keyed by the profile's list version, the same value the ETags are built from, so a list
+// is only ever served under the ETag of the version it was loaded for. A change on another instance, or one that
+// committed before this instance dropped its lists, bumps the version and makes the old entries unreachable.
+// ProfileService.certificatesChanged/categoriesChanged still remove them so they do not take up room until they expire.
+// Both caches are bounded by the total number of cached items, entries also expire after a while as a safety net
+// for changes made outside of this application. Hit, miss and eviction metrics are published as cache.* metrics.
+@Service
+public class ProfileListCache {
+
+    // archived is null for the list of all certificates
+    record CertificateListKey(Long profileId, Boolean archived, long version) {}
+
+    record CategoryListKey(Long profileId, long version) {}
+
+    private final Cache<CertificateListKey, List<CertificateDTO>> certificateLists;
+    private final Cache<CategoryListKey, List<CategoryDTO>> categoryLists;
+
+    public ProfileListCache(MeterRegistry meterRegistry,
+                            @Value("${certwatch.cache.lists.max-items:200000}") long maxItems,
+                            @Value("${certwatch.cache.lists.ttl:PT10M}") Duration ttl) {
+        this.certificateLists = Caffeine.newBuilder()
+                .maximumWeight(maxItems)
+                .<CertificateListKey, List<CertificateDTO>>weigher((key, list) -> list.size() + 1)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        this.categoryLists = Caffeine.newBuilder()
+                .maximumWeight(maxItems)
+                .<CategoryListKey, List<CategoryDTO>>weigher((key, list) -> list.size() + 1)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, certificateLists, "certificateLists");
+        CaffeineCacheMetrics.monitor(meterRegistry, categoryLists, "categoryLists");
+    }
+
+    // version must be read before the list is loaded, the loaded list is then at least as recent as that version
+    public List<CertificateDTO> getCertificates(Long profileId, Boolean archived, long version, Supplier<List<CertificateDTO>> loader) {
+        return certificateLists.get(new CertificateListKey(profileId, archived, version), key -> List.copyOf(loader.get()));
+    }
+
+    public List<CategoryDTO> getCategories(Long profileId, long version, Supplier<List<CategoryDTO>> loader) {
+        return categoryLists.get(new CategoryListKey(profileId, version), key -> List.copyOf(loader.get()));
+    }
+
+    // Drops the lists of every version of the profile
+    public void invalidateCertificates(Long profileId) {
+        afterCommit(() -> certificateLists.asMap().keySet().removeIf(key -> key.profileId().equals(profileId)));
+    }
+
+    public void invalidateCategories(Long profileId) {
+        afterCommit(() -> categoryLists.asMap().keySet().removeIf(key -> key.profileId().equals(profileId)));
+    }
+
+    // Inside a transaction the lists are only dropped once the change is visible to other transactions,
+    // lists of the old version loaded until then are dropped as well
+    private static void afterCommit(Runnable invalidation) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    invalidation.run();
+                }
+            });
+        } else {
+            invalidation.run();
+        }
+    }
+}
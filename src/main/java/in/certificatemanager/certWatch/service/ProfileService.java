@@ -1,10 +1,14 @@
 package in.certificatemanager.certWatch.service;
 
 import in.certificatemanager.certWatch.dto.AuthDTO;
+import in.certificatemanager.certWatch.dto.EmailDTO;
 import in.certificatemanager.certWatch.dto.ProfileDTO;
+import in.certificatemanager.certWatch.dto.ReminderSettingsDTO;
 import in.certificatemanager.certWatch.entity.ProfileEntity;
 import in.certificatemanager.certWatch.repository.ProfileRepository;
+import in.certificatemanager.certWatch.security.AuthenticatedProfile;
 import in.certificatemanager.certWatch.util.JwtUtil;
+import in.certificatemanager.certWatch.util.ReminderSchedule;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
@@ -15,6 +19,9 @@ import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
 
 import java.util.Map;
 import java.util.UUID;
@@ -25,14 +32,20 @@ import java.util.UUID;
 public class ProfileService {
 
     private final ProfileRepository profileRepository;
-    private final EmailService emailService;
+    private final EmailOutboxService emailOutboxService;
     private final PasswordEncoder passwordEncoder;
     private final AuthenticationManager authenticationManager;
     private final JwtUtil jwtUtil;
+    private final ProfileListCache profileListCache;
+    private final ReminderScheduleService reminderScheduleService;
+
+    private static final String CURRENT_PROFILE_ATTRIBUTE = ProfileService.class.getName() + ".currentProfile";
 
     @Value("${app.activation.url}")
     private String activationURL;
 
+    // The activation email is queued in the same transaction as the profile, the request does not wait for the email provider
+    @Transactional
     public ProfileDTO registerProfile(ProfileDTO profileDTO){
         ProfileEntity newProfile = toEntity(profileDTO);
         newProfile.setActivationToken(UUID.randomUUID().toString());
@@ -42,7 +55,8 @@ public class ProfileService {
         String activationLink = activationURL+"/api/v1.0/activate?token=" + newProfile.getActivationToken();
         String subject = "Activate your CertWatch account";
         String body = "Click on the following link to activate your account: " + activationLink;
-        emailService.sendEmail(newProfile.getEmail(), subject, body);
+        emailOutboxService.enqueue(EmailDTO.builder().to(newProfile.getEmail()).subject(subject).body(body).build(),
+                "activation:" + newProfile.getId());
 
         return toDTO(newProfile);
     }
@@ -84,10 +98,65 @@ public class ProfileService {
                 .orElse(false);
     }
 
+    // Id of the authenticated profile, read from the principal set by JwtRequestFilter without any query
+    public Long getCurrentProfileId(){
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if(authentication != null && authentication.getPrincipal() instanceof AuthenticatedProfile principal){
+            return principal.id();
+        }
+        return getCurrentProfile().getId();
+    }
+
+    // Reference to the authenticated profile for foreign keys, the profile row is not loaded
+    public ProfileEntity getCurrentProfileReference(){
+        return profileRepository.getReferenceById(getCurrentProfileId());
+    }
+
+    // The fully loaded profile, looked up at most once per request
     public ProfileEntity getCurrentProfile(){
+        RequestAttributes requestAttributes = RequestContextHolder.getRequestAttributes();
+        if(requestAttributes != null
+                && requestAttributes.getAttribute(CURRENT_PROFILE_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST) instanceof ProfileEntity profile){
+            return profile;
+        }
+
         Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
-        return profileRepository.findByEmail(authentication.getName())
+        ProfileEntity profile = (authentication.getPrincipal() instanceof AuthenticatedProfile principal
+                ? profileRepository.findById(principal.id())
+                : profileRepository.findByEmail(authentication.getName()))
                 .orElseThrow(() -> new UsernameNotFoundException("Profile not found with email: " + authentication.getName()));
+        if(requestAttributes != null){
+            requestAttributes.setAttribute(CURRENT_PROFILE_ATTRIBUTE, profile, RequestAttributes.SCOPE_REQUEST);
+        }
+        return profile;
+    }
+
+    // Must be called with or after every change of the profile's certificates. Bumping the version changes the ETags
+    // and the keys of the cached lists, dropping the cached lists only frees their room.
+    public void certificatesChanged(Long profileId){
+        profileListCache.invalidateCertificates(profileId);
+        profileRepository.incrementCertificatesVersion(profileId);
+    }
+
+    public void categoriesChanged(Long profileId){
+        profileListCache.invalidateCategories(profileId);
+        profileRepository.incrementCategoriesVersion(profileId);
+    }
+
+    public long getCertificatesVersion(){
+        return getCertificatesVersion(getCurrentProfileId());
+    }
+
+    public long getCategoriesVersion(){
+        return getCategoriesVersion(getCurrentProfileId());
+    }
+
+    public long getCertificatesVersion(Long profileId){
+        return profileRepository.findCertificatesVersionById(profileId).orElse(0L);
+    }
+
+    public long getCategoriesVersion(Long profileId){
+        return profileRepository.findCategoriesVersionById(profileId).orElse(0L);
     }
 
     public ProfileDTO getPublicProfile(String email){
@@ -103,18 +172,30 @@ public class ProfileService {
                 .id(currentUser.getId())
                 .fullName(currentUser.getFullName())
                 .email(currentUser.getEmail())
+                .reminderDays(currentUser.getReminderDays() != null ? currentUser.getReminderDays() : ReminderSchedule.DEFAULT_THRESHOLDS)
                 .createdAt(currentUser.getCreatedAt())
                 .updatedAt(currentUser.getUpdatedAt())
                 .build();
     }
 
+    // Blank reminder days go back to the default thresholds
+    public ProfileDTO updateReminderDays(ReminderSettingsDTO settings){
+        ProfileEntity profile = getCurrentProfile();
+        profile.setReminderDays(ReminderSchedule.normalize(settings.getReminderDays()));
+        profileRepository.save(profile);
+        reminderScheduleService.reschedule(profile.getId(), null);
+        log.info("Reminder days updated for profile Id - " + profile.getId());
+        return getPublicProfile(null);
+    }
+
     public Map<String, Object> authenticateAndGenerateToken(AuthDTO authDTO) {
         try{
             authenticationManager.authenticate(new UsernamePasswordAuthenticationToken(authDTO.getEmail(), authDTO.getPassword()));
-            String token = jwtUtil.generateToken(authDTO.getEmail());
+            ProfileDTO user = getPublicProfile(authDTO.getEmail());
+            String token = jwtUtil.generateToken(authDTO.getEmail(), user.getId());
             return Map.of(
                     "token", token,
-                    "user", getPublicProfile(authDTO.getEmail())
+                    "user", user
             );
         }catch(Exception e){
             throw new RuntimeException("Invalid email or password");
@@ -0,0 +1,87 @@
+package in.certificatemanager.certWatch.service;
+
+import in.certificatemanager.certWatch.repository.CategoryRepository;
+import in.certificatemanager.certWatch.repository.CertificateRepository;
+import in.certificatemanager.certWatch.util.ReminderSchedule;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+// Keeps the precomputed next reminder date of the certificates in line with the reminder thresholds
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ReminderScheduleService {
+
+    private static final int CHUNK_SIZE = 500;
+
+    private final CertificateRepository certificateRepository;
+    private final CategoryRepository categoryRepository;
+    private final TransactionTemplate transactionTemplate;
+
+    // Thresholds that apply to the certificates of a category
+    public List<Integer> thresholdsOf(Long categoryId){
+        return ReminderSchedule.parse(categoryRepository.findEffectiveReminderDays(categoryId));
+    }
+
+    // Recomputes the reminders of a profile's certificates after its thresholds changed, or only those of one category.
+    // Thresholds that already passed are not reminded again.
+    public void reschedule(Long profileId, Long categoryId){
+        LocalDate today = LocalDate.now();
+        long lastId = 0L;
+        int rescheduled = 0;
+        List<CertificateRepository.ReminderView> chunk;
+        do{
+            chunk = certificateRepository.findForRescheduling(profileId, categoryId, lastId, Limit.of(CHUNK_SIZE));
+            List<CertificateRepository.ReminderView> rows = chunk;
+            transactionTemplate.executeWithoutResult(status -> schedule(rows, today, false));
+            if(!chunk.isEmpty()) lastId = chunk.get(chunk.size() - 1).getId();
+            rescheduled += chunk.size();
+        }while(chunk.size() == CHUNK_SIZE);
+        log.info("Reminders rescheduled [profileId={}, categoryId={}, certificates={}]", profileId, categoryId, rescheduled);
+    }
+
+    // Recomputes the reminders of certificates changed in bulk, as for a single update a threshold that already
+    // passed is reminded today. Archived certificates are skipped. Runs in the caller's transaction when there is one.
+    public void scheduleCertificates(List<Long> certificateIds){
+        LocalDate today = LocalDate.now();
+        for(int from = 0; from < certificateIds.size(); from += CHUNK_SIZE){
+            Collection<Long> ids = certificateIds.subList(from, Math.min(from + CHUNK_SIZE, certificateIds.size()));
+            List<CertificateRepository.ReminderView> rows = certificateRepository.findReminderViewsByIdIn(ids);
+            transactionTemplate.executeWithoutResult(status -> schedule(rows, today, true));
+        }
+    }
+
+    // Certificates stored before reminders were precomputed get their first reminder date once at startup
+    @EventListener(ApplicationReadyEvent.class)
+    public void scheduleUnscheduled(){
+        LocalDate today = LocalDate.now();
+        int scheduled = 0;
+        List<CertificateRepository.ReminderView> chunk;
+        do{
+            chunk = certificateRepository.findUnscheduled(Limit.of(CHUNK_SIZE));
+            List<CertificateRepository.ReminderView> rows = chunk;
+            transactionTemplate.executeWithoutResult(status -> schedule(rows, today, false));
+            scheduled += chunk.size();
+        }while(chunk.size() == CHUNK_SIZE);
+        if(scheduled > 0) log.info("Reminders scheduled for {} certificates", scheduled);
+    }
+
+    // One update per distinct date instead of one per certificate
+    private void schedule(List<CertificateRepository.ReminderView> rows, LocalDate today, boolean catchUp){
+        Map<LocalDate, List<Long>> idsByDate = rows.stream().collect(Collectors.groupingBy(
+                row -> ReminderSchedule.nextReminder(row.getExpiryDate(), ReminderSchedule.parse(row.getReminderDays()), today, catchUp),
+                Collectors.mapping(CertificateRepository.ReminderView::getId, Collectors.toList())));
+        idsByDate.forEach((date, ids) -> certificateRepository.updateNextNotifyOn(ids, date));
+    }
+}
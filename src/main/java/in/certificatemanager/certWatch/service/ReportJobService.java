@@ -0,0 +1,327 @@
+package in.certificatemanager.certWatch.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import in.certificatemanager.certWatch.customExceptions.InvalidRequestParameterException;
+import in.certificatemanager.certWatch.customExceptions.ReportNotReadyException;
+import in.certificatemanager.certWatch.customExceptions.ResourceNotFoundException;
+import in.certificatemanager.certWatch.customExceptions.ServiceBusyException;
+import in.certificatemanager.certWatch.dto.EmailDTO;
+import in.certificatemanager.certWatch.dto.ReportJobDTO;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+// Generates certificate reports off the request thread. Jobs run on a small bounded pool of workers and write their
+// file to local disk, clients poll the job and download the file once it is done. A job is keyed by profile, format
+// and the profile's certificates version, so asking again while the data is unchanged returns the job that already
+// ran or is running instead of generating the same file twice.
+// Jobs and their files only live on the instance that ran them and are dropped after certwatch.reports.ttl.
+// Every instance writes into its own subdirectory of certwatch.reports.dir and holds a file lock on it while it runs,
+// so instances sharing the directory never delete each other's reports.
+@Slf4j
+@Service
+public class ReportJobService {
+
+    public enum Format {
+        XLSX("xlsx", "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet"),
+        CSV("csv", "text/csv;charset=UTF-8"),
+        NDJSON("ndjson", "application/x-ndjson");
+
+        private final String extension;
+        private final String contentType;
+
+        Format(String extension, String contentType) {
+            this.extension = extension;
+            this.contentType = contentType;
+        }
+
+        public String getExtension() {
+            return extension;
+        }
+
+        public String getContentType() {
+            return contentType;
+        }
+
+        public static Format of(String format) {
+            for (Format value : values()) {
+                if (value.extension.equalsIgnoreCase(format)) return value;
+            }
+            throw new InvalidRequestParameterException("Unsupported report format: " + format);
+        }
+    }
+
+    public enum Status { QUEUED, RUNNING, DONE, FAILED }
+
+    private static final String INSTANCE_DIRECTORY_PREFIX = "instance-";
+    // An instance directory before it is locked, an instance that dies in between leaves an empty one behind
+    private static final String PENDING_DIRECTORY_PREFIX = ".pending-";
+    private static final String LOCK_FILE = ".lock";
+    // Report files are named <job id>.<format extension>, nothing else is ever deleted
+    private static final Pattern REPORT_FILE = Pattern.compile(
+            "[0-9a-f]{8}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{12}\\.(xlsx|csv|ndjson)");
+
+    record JobKey(Long profileId, Format format, long version) {}
+
+    // The finished file of a job that is done
+    public record ReportFile(Path path, Format format, long size) {}
+
+    // Written by the worker only, request threads read the volatile fields
+    private static final class ReportJob {
+        private final String id = UUID.randomUUID().toString();
+        private final JobKey key;
+        private final LocalDateTime createdAt = LocalDateTime.now();
+        // Completed with the file once it was written, fails with the job
+        private final CompletableFuture<Path> file = new CompletableFuture<>();
+        private volatile Status status = Status.QUEUED;
+        private volatile long size;
+        private volatile LocalDateTime finishedAt;
+        private volatile String error;
+
+        private ReportJob(JobKey key) {
+            this.key = key;
+        }
+    }
+
+    private final ExcelService excelService;
+    private final CertificateExportService certificateExportService;
+    private final ProfileService profileService;
+    private final EmailOutboxService emailOutboxService;
+    private final Path directory;
+    private final FileChannel directoryLock;
+    private final ThreadPoolExecutor workers;
+    private final Cache<JobKey, ReportJob> jobsByKey;
+    private final Map<String, ReportJob> jobsById = new ConcurrentHashMap<>();
+
+    public ReportJobService(ExcelService excelService,
+                            CertificateExportService certificateExportService,
+                            ProfileService profileService,
+                            EmailOutboxService emailOutboxService,
+                            MeterRegistry meterRegistry,
+                            @Value("${certwatch.reports.dir:${java.io.tmpdir}/certwatch-reports}") Path directory,
+                            @Value("${certwatch.reports.workers:2}") int workerCount,
+                            @Value("${certwatch.reports.queue-capacity:50}") int queueCapacity,
+                            @Value("${certwatch.reports.max-jobs:1000}") long maxJobs,
+                            @Value("${certwatch.reports.ttl:PT1H}") Duration ttl) throws IOException {
+        this.excelService = excelService;
+        this.certificateExportService = certificateExportService;
+        this.profileService = profileService;
+        this.emailOutboxService = emailOutboxService;
+        Path baseDirectory = Files.createDirectories(directory);
+        // The directory is created and locked under a name the startup cleanup does not look at, and only then renamed.
+        // An instance directory is therefore always locked while its instance runs, also right after it was created.
+        String instanceId = UUID.randomUUID().toString();
+        Path pending = Files.createDirectory(baseDirectory.resolve(PENDING_DIRECTORY_PREFIX + instanceId));
+        this.directoryLock = FileChannel.open(pending.resolve(LOCK_FILE), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        this.directoryLock.lock();
+        this.directory = Files.move(pending, baseDirectory.resolve(INSTANCE_DIRECTORY_PREFIX + instanceId), StandardCopyOption.ATOMIC_MOVE);
+        deleteLeftoverFiles(baseDirectory);
+
+        // A full queue rejects new jobs instead of letting a report storm pile up in memory
+        AtomicInteger threadCount = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(workerCount, workerCount, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> new Thread(runnable, "report-" + threadCount.incrementAndGet()));
+        this.workers = executor;
+        ExecutorServiceMetrics.monitor(meterRegistry, executor, "reports");
+
+        // The file of a dropped job is deleted once it was written, also if the job was still running
+        this.jobsByKey = Caffeine.newBuilder()
+                .maximumSize(maxJobs)
+                .expireAfterWrite(ttl)
+                .<JobKey, ReportJob>removalListener((key, job, cause) -> {
+                    if (job == null) return;
+                    jobsById.remove(job.id);
+                    job.file.thenAccept(ReportJobService::deleteQuietly);
+                })
+                .build();
+    }
+
+    // Returns the job producing the report of the profile's current certificates, a new one is only queued if there
+    // is none for this version yet or the previous one failed. With emailTo the file is emailed once it is ready.
+    public ReportJobDTO submit(Long profileId, Format format, String emailTo) {
+        JobKey key = new JobKey(profileId, format, profileService.getCertificatesVersion(profileId));
+        ReportJob[] created = new ReportJob[1];
+        ReportJob job = jobsByKey.asMap().compute(key, (k, existing) -> {
+            if (existing != null && existing.status != Status.FAILED) return existing;
+            created[0] = new ReportJob(k);
+            return created[0];
+        });
+
+        if (created[0] != null) {
+            jobsById.put(job.id, job);
+            try {
+                workers.execute(() -> run(job));
+            } catch (RejectedExecutionException e) {
+                jobsByKey.asMap().remove(key, job);
+                throw new ServiceBusyException("Too many reports are being generated, please try again later.");
+            }
+            log.info("Report job {} queued [profileId={}, format={}]", job.id, profileId, format);
+        }
+
+        if (emailTo != null) {
+            job.file.thenAccept(path -> emailReport(path, format, emailTo))
+                    .exceptionally(e -> {
+                        log.error("Unable to email report {} to {}", job.id, emailTo, e);
+                        return null;
+                    });
+        }
+        return toDTO(job);
+    }
+
+    public ReportJobDTO getJob(Long profileId, String jobId) {
+        return toDTO(findJob(profileId, jobId));
+    }
+
+    public ReportFile getFile(Long profileId, String jobId) {
+        ReportJob job = findJob(profileId, jobId);
+        if (job.status != Status.DONE) {
+            throw new ReportNotReadyException("Report " + jobId + " is " + job.status.name().toLowerCase() + ".");
+        }
+        return new ReportFile(job.file.join(), job.key.format(), job.size);
+    }
+
+    @PreDestroy
+    public void shutdown() throws IOException {
+        workers.shutdownNow();
+        deleteReportFiles(directory);
+        directoryLock.close();
+        deleteQuietly(directory.resolve(LOCK_FILE));
+        deleteQuietly(directory);
+    }
+
+    private ReportJob findJob(Long profileId, String jobId) {
+        ReportJob job = jobsById.get(jobId);
+        if (job == null || !job.key.profileId().equals(profileId)) {
+            throw new ResourceNotFoundException("Report job not found with id: " + jobId);
+        }
+        return job;
+    }
+
+    private void run(ReportJob job) {
+        job.status = Status.RUNNING;
+        long start = System.nanoTime();
+        Path target = directory.resolve(job.id + "." + job.key.format().getExtension());
+        try {
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(target))) {
+                write(job.key.format(), out, job.key.profileId());
+            }
+            job.size = Files.size(target);
+            job.finishedAt = LocalDateTime.now();
+            job.status = Status.DONE;
+            job.file.complete(target);
+            log.info("Report job {} done in {} ms [size={}]", job.id, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), job.size);
+        } catch (Exception e) {
+            log.error("Report job {} failed", job.id, e);
+            deleteQuietly(target);
+            job.error = "Report generation failed";
+            job.finishedAt = LocalDateTime.now();
+            job.status = Status.FAILED;
+            job.file.completeExceptionally(e);
+        }
+    }
+
+    public void write(Format format, OutputStream out, Long profileId) throws IOException {
+        switch (format) {
+            case XLSX -> excelService.writeCertificatesToExcel(out, profileId);
+            case CSV -> certificateExportService.writeCertificatesToCsv(out, profileId);
+            case NDJSON -> certificateExportService.writeCertificatesToNdjson(out, profileId);
+        }
+    }
+
+    // The outbox stores the attachment, so the file is read once here
+    private void emailReport(Path path, Format format, String emailTo) {
+        byte[] attachment;
+        try {
+            attachment = Files.readAllBytes(path);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        emailOutboxService.enqueue(EmailDTO.builder()
+                .to(emailTo)
+                .subject("Your certificate details report")
+                .body("Please find your attached report with all the certificate details")
+                .attachment(attachment)
+                .attachmentName("certificate_report." + format.getExtension())
+                .build(), null);
+    }
+
+    private ReportJobDTO toDTO(ReportJob job) {
+        return ReportJobDTO.builder()
+                .id(job.id)
+                .format(job.key.format().getExtension())
+                .status(job.status.name())
+                .size(job.status == Status.DONE ? job.size : null)
+                .createdAt(job.createdAt)
+                .finishedAt(job.finishedAt)
+                .error(job.error)
+                .build();
+    }
+
+    // Reports of instances that stopped without cleaning up: their directory lock is no longer held.
+    // Report files left directly in the base directory by earlier versions are removed as well.
+    private void deleteLeftoverFiles(Path baseDirectory) throws IOException {
+        deleteReportFiles(baseDirectory);
+        try (DirectoryStream<Path> instances = Files.newDirectoryStream(baseDirectory, INSTANCE_DIRECTORY_PREFIX + "*")) {
+            for (Path instance : instances) {
+                if (instance.equals(directory) || !Files.isDirectory(instance)) continue;
+                try (FileChannel channel = FileChannel.open(instance.resolve(LOCK_FILE), StandardOpenOption.WRITE);
+                     FileLock lock = channel.tryLock()) {
+                    if (lock == null) continue;
+                    deleteReportFiles(instance);
+                } catch (NoSuchFileException | OverlappingFileLockException e) {
+                    // Not an instance directory, or its instance runs in this JVM
+                    continue;
+                }
+                deleteQuietly(instance.resolve(LOCK_FILE));
+                deleteQuietly(instance);
+            }
+        }
+    }
+
+    private static void deleteReportFiles(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            files.filter(path -> REPORT_FILE.matcher(path.getFileName().toString()).matches())
+                    .forEach(ReportJobService::deleteQuietly);
+        }
+    }
+
+    private static void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            log.warn("Unable to delete report file {}", path, e);
+        }
+    }
+}
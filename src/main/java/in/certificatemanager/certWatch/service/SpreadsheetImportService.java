@@ -0,0 +1,405 @@
+package in.certificatemanager.certWatch.service;
+
+import in.certificatemanager.certWatch.customExceptions.InvalidRequestParameterException;
+import in.certificatemanager.certWatch.customExceptions.ResourceNotFoundException;
+import in.certificatemanager.certWatch.dto.CategoryDTO;
+import in.certificatemanager.certWatch.dto.ImportRowErrorDTO;
+import in.certificatemanager.certWatch.dto.SpreadsheetImportResultDTO;
+import in.certificatemanager.certWatch.entity.CertificateEntity;
+import in.certificatemanager.certWatch.entity.ProfileEntity;
+import in.certificatemanager.certWatch.repository.CategoryRepository;
+import in.certificatemanager.certWatch.repository.CertificateRepository;
+import in.certificatemanager.certWatch.util.CsvReader;
+import in.certificatemanager.certWatch.util.ReminderSchedule;
+import jakarta.persistence.EntityManager;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.ss.usermodel.DateUtil;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.util.XMLHelper;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler;
+import org.apache.poi.xssf.usermodel.XSSFComment;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.multipart.MultipartFile;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+// Imports certificates from a spreadsheet in the layout of the Excel and CSV exports. XLSX files are read with the
+// event based reader and CSV files record by record, rows are checked and saved in batches as they are read, so memory
+// use is bounded by the batch size and not by the number of rows. Rows that cannot be imported are reported with their
+// row number, the other rows are imported. If the file cannot be read to its end, the rows saved until then stay
+// imported and the result reports where reading stopped.
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class SpreadsheetImportService {
+
+    private static final byte[] ZIP_SIGNATURE = {'P', 'K', 3, 4};
+
+    // Placeholder the Excel export writes for missing values
+    private static final String NOT_AVAILABLE = "N/A";
+    private static final int MAX_TEXT_LENGTH = 255;
+
+    private static final String SUBJECT = "Subject";
+    private static final String ISSUED_BY = "Issued By";
+    private static final String CATEGORY = "Category";
+    private static final String SERIAL_NUMBER = "Certificate Sr Number";
+    private static final String ISSUED_DATE = "Issued Date";
+    private static final String EXPIRY_DATE = "Expiry Date";
+    private static final String VERSION = "Version";
+    private static final String SIGNATURE_ALGORITHM = "Signature Algorithm";
+    private static final String SAN = "SAN";
+    private static final String COMMENTS = "Comments";
+    private static final String ARCHIVED = "Archived";
+
+    private final CertificateRepository certificateRepository;
+    private final CategoryRepository categoryRepository;
+    private final ProfileService profileService;
+    private final ReminderScheduleService reminderScheduleService;
+    private final TransactionTemplate transactionTemplate;
+    private final EntityManager entityManager;
+
+    @Value("${certwatch.import.batch-size:500}")
+    private int batchSize;
+
+    @Value("${certwatch.import.max-entries:50000}")
+    private int maxEntries;
+
+    // Thrown by the row handler once maxEntries rows were read, ends the reading of the file
+    private static final class RowLimitReached extends RuntimeException {
+        private RowLimitReached() {
+            super(null, null, false, false);
+        }
+    }
+
+    // Rows without a category cell go into defaultCategoryId, if given
+    public SpreadsheetImportResultDTO importSpreadsheet(MultipartFile file, Long defaultCategoryId) throws IOException {
+        ProfileEntity profile = profileService.getCurrentProfileReference();
+        List<CategoryDTO> categories = categoryRepository.findDTOsByProfileId(profile.getId());
+        if (defaultCategoryId != null && categories.stream().noneMatch(category -> category.getId().equals(defaultCategoryId))) {
+            throw new ResourceNotFoundException("Category not found.");
+        }
+
+        RowImport rowImport = new RowImport(profile, categories, defaultCategoryId);
+        try {
+            try {
+                if (isZip(file)) {
+                    readXlsx(file, rowImport);
+                } else {
+                    readCsv(file, rowImport);
+                }
+            } catch (RowLimitReached e) {
+                rowImport.errors.add(new ImportRowErrorDTO(rowImport.lastRow + 1,
+                        "Only " + maxEntries + " rows can be imported at once, the remaining rows were not read."));
+            } catch (InvalidRequestParameterException | IOException e) {
+                // Batches saved before the file turned out to be unreadable stay imported and are reported with
+                // the error, the request only fails if nothing was imported
+                rowImport.flush();
+                if (rowImport.imported == 0) throw e;
+                log.warn("Spreadsheet import stopped after row {} [profileId={}, imported={}]",
+                        rowImport.lastRow, profile.getId(), rowImport.imported, e);
+                rowImport.errors.add(new ImportRowErrorDTO(rowImport.lastRow + 1,
+                        "Unable to read the file from this row on, the remaining rows were not read: " + e.getMessage()));
+            }
+            rowImport.flush();
+        } finally {
+            // Saved batches are committed, the cached lists must be invalidated even if the import failed later on
+            if (rowImport.imported > 0) {
+                profileService.certificatesChanged(profile.getId());
+            }
+        }
+        rowImport.errors.sort(Comparator.comparingInt(ImportRowErrorDTO::getRow));
+
+        log.info("Spreadsheet import finished [profileId={}, total={}, imported={}, failed={}]",
+                profile.getId(), rowImport.total, rowImport.imported, rowImport.total - rowImport.imported);
+        return SpreadsheetImportResultDTO.builder()
+                .total(rowImport.total)
+                .imported(rowImport.imported)
+                .failed(rowImport.total - rowImport.imported)
+                .errors(rowImport.errors)
+                .build();
+    }
+
+    private static boolean isZip(MultipartFile file) throws IOException {
+        try (InputStream in = file.getInputStream()) {
+            return Arrays.equals(in.readNBytes(ZIP_SIGNATURE.length), ZIP_SIGNATURE);
+        }
+    }
+
+    // The package is opened from a file, opening it from a stream would unpack every part into memory.
+    // Only the shared strings table is held in memory, the sheet itself is parsed as a stream of SAX events.
+    private void readXlsx(MultipartFile file, RowImport rowImport) throws IOException {
+        Path temp = Files.createTempFile("certwatch-import-", ".xlsx");
+        try {
+            file.transferTo(temp);
+            try (OPCPackage pkg = OPCPackage.open(temp.toFile(), PackageAccess.READ)) {
+                XSSFReader reader = new XSSFReader(pkg);
+                XSSFReader.SheetIterator sheets = (XSSFReader.SheetIterator) reader.getSheetsData();
+                if (!sheets.hasNext()) throw new InvalidRequestParameterException("The workbook has no sheet.");
+                try (InputStream sheet = sheets.next()) {
+                    XMLReader parser = XMLHelper.newXMLReader();
+                    parser.setContentHandler(new XSSFSheetXMLHandler(reader.getStylesTable(), null,
+                            new ReadOnlySharedStringsTable(pkg), new SheetRows(rowImport), new IsoDateFormatter(), false));
+                    parser.parse(new InputSource(sheet));
+                }
+            }
+        } catch (OpenXML4JException | SAXException | ParserConfigurationException e) {
+            log.error("Unable to read spreadsheet", e);
+            throw new InvalidRequestParameterException("Unable to read the spreadsheet, expected an XLSX or CSV file.");
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private void readCsv(MultipartFile file, RowImport rowImport) throws IOException {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(file.getInputStream(), StandardCharsets.UTF_8))) {
+            CsvReader csv = new CsvReader(reader);
+            int rowNum = 0;
+            List<String> record;
+            while ((record = csv.next()) != null) {
+                rowImport.row(++rowNum, record);
+            }
+        }
+    }
+
+    // Collects the cells of a sheet row by column, cells the sheet leaves out stay null
+    private static final class SheetRows implements XSSFSheetXMLHandler.SheetContentsHandler {
+
+        private final RowImport rowImport;
+        private final List<String> cells = new ArrayList<>();
+
+        private SheetRows(RowImport rowImport) {
+            this.rowImport = rowImport;
+        }
+
+        @Override
+        public void startRow(int rowNum) {
+            cells.clear();
+        }
+
+        @Override
+        public void endRow(int rowNum) {
+            rowImport.row(rowNum + 1, cells);
+        }
+
+        @Override
+        public void cell(String cellReference, String formattedValue, XSSFComment comment) {
+            int column = new CellReference(cellReference).getCol();
+            while (cells.size() <= column) cells.add(null);
+            cells.set(column, formattedValue);
+        }
+    }
+
+    // Date cells are formatted as ISO dates, the way the exports write them, instead of in the cell's display format
+    private static final class IsoDateFormatter extends DataFormatter {
+        @Override
+        public String formatRawCellContents(double value, int formatIndex, String formatString) {
+            if (DateUtil.isADateFormat(formatIndex, formatString) && DateUtil.isValidExcelDate(value)) {
+                return DateUtil.getLocalDateTime(value).toLocalDate().toString();
+            }
+            return super.formatRawCellContents(value, formatIndex, formatString);
+        }
+    }
+
+    // State of one import: the column layout read from the header, the rows waiting to be saved and the counts
+    private final class RowImport {
+
+        private final ProfileEntity profile;
+        private final Long defaultCategoryId;
+        // Per request lookup of the profile's categories by lower case name. The keys of thresholdsByCategory are the
+        // ids of the profile's categories, their reminder thresholds are looked up when the category is first used.
+        private final Map<String, Long> categoryIdsByName = new HashMap<>();
+        private final Map<Long, List<Integer>> thresholdsByCategory = new HashMap<>();
+        private final Map<String, Integer> columns = new HashMap<>();
+        private final List<CertificateEntity> pending = new ArrayList<>();
+        private final List<Integer> pendingRows = new ArrayList<>();
+        private final List<ImportRowErrorDTO> errors = new ArrayList<>();
+        private final LocalDate today = LocalDate.now();
+        private boolean headerRead;
+        private int lastRow;
+        private int total;
+        private int imported;
+
+        private RowImport(ProfileEntity profile, List<CategoryDTO> categories, Long defaultCategoryId) {
+            this.profile = profile;
+            this.defaultCategoryId = defaultCategoryId;
+            for (CategoryDTO category : categories) {
+                categoryIdsByName.putIfAbsent(category.getName().trim().toLowerCase(Locale.ROOT), category.getId());
+                thresholdsByCategory.put(category.getId(), null);
+            }
+        }
+
+        private void row(int rowNum, List<String> cells) {
+            lastRow = rowNum;
+            if (!headerRead) {
+                readHeader(cells);
+                headerRead = true;
+                return;
+            }
+            if (cells.stream().allMatch(cell -> cell == null || cell.isBlank())) return;
+            if (total == maxEntries) throw new RowLimitReached();
+            total++;
+            try {
+                pending.add(toEntity(cells));
+                pendingRows.add(rowNum);
+            } catch (InvalidRequestParameterException e) {
+                errors.add(new ImportRowErrorDTO(rowNum, e.getMessage()));
+            }
+            if (pending.size() == batchSize) flush();
+        }
+
+        // Columns are matched by their header, so they may be in any order and unknown columns are ignored
+        private void readHeader(List<String> cells) {
+            for (int i = 0; i < cells.size(); i++) {
+                if (cells.get(i) != null) columns.putIfAbsent(cells.get(i).trim().toLowerCase(Locale.ROOT), i);
+            }
+            List<String> missing = new ArrayList<>();
+            for (String required : List.of(SUBJECT, EXPIRY_DATE, CATEGORY)) {
+                if (!columns.containsKey(required.toLowerCase(Locale.ROOT))
+                        && !(required.equals(CATEGORY) && defaultCategoryId != null)) {
+                    missing.add(required);
+                }
+            }
+            if (!missing.isEmpty()) {
+                throw new InvalidRequestParameterException("Missing columns in the header row: " + String.join(", ", missing) + ".");
+            }
+        }
+
+        private CertificateEntity toEntity(List<String> cells) {
+            String subject = text(cells, SUBJECT);
+            if (subject == null) throw new InvalidRequestParameterException(SUBJECT + " is missing.");
+            LocalDate expiryDate = date(cells, EXPIRY_DATE);
+            if (expiryDate == null) throw new InvalidRequestParameterException(EXPIRY_DATE + " is missing.");
+            Long categoryId = category(cells);
+
+            return CertificateEntity.builder()
+                    .subject(subject)
+                    .issuedBy(text(cells, ISSUED_BY))
+                    .serialNumber(text(cells, SERIAL_NUMBER))
+                    .issuedDate(date(cells, ISSUED_DATE))
+                    .expiryDate(expiryDate)
+                    .version(version(cells))
+                    .signatureAlgorithm(text(cells, SIGNATURE_ALGORITHM))
+                    .subjectAltName(text(cells, SAN))
+                    .comments(text(cells, COMMENTS))
+                    .isArchived(archived(cells))
+                    .nextNotifyOn(ReminderSchedule.nextReminder(expiryDate,
+                            thresholdsByCategory.computeIfAbsent(categoryId, reminderScheduleService::thresholdsOf), today, true))
+                    .profile(profile)
+                    .category(categoryRepository.getReferenceById(categoryId))
+                    .build();
+        }
+
+        // One transaction per batch, a batch that cannot be saved fails all of its rows
+        private void flush() {
+            if (pending.isEmpty()) return;
+            try {
+                transactionTemplate.executeWithoutResult(status -> {
+                    certificateRepository.saveAll(pending);
+                    detachSaved();
+                });
+                imported += pending.size();
+            } catch (Exception e) {
+                log.error("Unable to save certificate batch of size {}", pending.size(), e);
+                pendingRows.forEach(row -> errors.add(new ImportRowErrorDTO(row, "Unable to save certificate.")));
+            }
+            pending.clear();
+            pendingRows.clear();
+        }
+
+        // Saved batches are detached, as in CertificateImportService
+        private void detachSaved() {
+            entityManager.flush();
+            entityManager.clear();
+        }
+
+        private String cell(List<String> cells, String column) {
+            Integer index = columns.get(column.toLowerCase(Locale.ROOT));
+            if (index == null || index >= cells.size() || cells.get(index) == null) return null;
+            String value = cells.get(index).trim();
+            return value.isEmpty() ? null : value;
+        }
+
+        private String text(List<String> cells, String column) {
+            String value = cell(cells, column);
+            if (NOT_AVAILABLE.equals(value)) return null;
+            if (value != null && value.length() > MAX_TEXT_LENGTH) {
+                throw new InvalidRequestParameterException(column + " is longer than " + MAX_TEXT_LENGTH + " characters.");
+            }
+            return value;
+        }
+
+        private LocalDate date(List<String> cells, String column) {
+            String value = cell(cells, column);
+            if (value == null) return null;
+            try {
+                return LocalDate.parse(value);
+            } catch (DateTimeParseException e) {
+                throw new InvalidRequestParameterException("Invalid " + column + " '" + value + "', expected yyyy-MM-dd.");
+            }
+        }
+
+        private int version(List<String> cells) {
+            String value = text(cells, VERSION);
+            if (value == null) return 0;
+            try {
+                return Integer.parseInt(value);
+            } catch (NumberFormatException e) {
+                throw new InvalidRequestParameterException("Invalid " + VERSION + " '" + value + "'.");
+            }
+        }
+
+        private boolean archived(List<String> cells) {
+            String value = cell(cells, ARCHIVED);
+            if (value == null) return false;
+            if (value.equalsIgnoreCase("true")) return true;
+            if (value.equalsIgnoreCase("false")) return false;
+            throw new InvalidRequestParameterException("Invalid " + ARCHIVED + " '" + value + "', expected true or false.");
+        }
+
+        // The exports write the category id, sheets kept by hand usually have the name
+        private Long category(List<String> cells) {
+            String value = cell(cells, CATEGORY);
+            if (value == null) {
+                if (defaultCategoryId != null) return defaultCategoryId;
+                throw new InvalidRequestParameterException(CATEGORY + " is missing.");
+            }
+            Long byName = categoryIdsByName.get(value.toLowerCase(Locale.ROOT));
+            if (byName != null) return byName;
+            try {
+                Long id = Long.valueOf(value);
+                if (thresholdsByCategory.containsKey(id)) return id;
+            } catch (NumberFormatException e) {
+                // not an id either
+            }
+            throw new InvalidRequestParameterException("Unknown category '" + value + "'.");
+        }
+    }
+}
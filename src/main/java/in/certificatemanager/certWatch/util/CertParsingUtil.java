@@ -1,97 +1,186 @@
 package in.certificatemanager.certWatch.util;
 
 import in.certificatemanager.certWatch.customExceptions.InvalidCertificateFormatException;
+import in.certificatemanager.certWatch.customExceptions.InvalidRequestParameterException;
 import in.certificatemanager.certWatch.dto.DetailsDTO;
 import java.io.ByteArrayInputStream;
 import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.CertificateException;
 import java.security.cert.CertificateFactory;
 import java.security.cert.CertificateParsingException;
 import java.security.cert.X509Certificate;
 import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Base64;
 import java.util.Collection;
+import java.util.HexFormat;
 import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 import javax.security.auth.x500.X500Principal;
 
 public class CertParsingUtil {
 
-    private static boolean hasValidPemMarkers(String input) {
-        return input.trim().startsWith("-----BEGIN CERTIFICATE-----") && input.trim().endsWith("-----END CERTIFICATE-----");
+    private static final byte[] BEGIN_MARKER = "-----BEGIN CERTIFICATE-----".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] END_MARKER = "-----END CERTIFICATE-----".getBytes(StandardCharsets.US_ASCII);
+    private static final Pattern SHA256_HEX = Pattern.compile("[0-9a-f]{64}");
+
+    // CertificateFactory instances are not guaranteed to be thread safe,
+    // so every thread keeps its own one instead of creating a new one per certificate
+    private static final ThreadLocal<CertificateFactory> X509_FACTORY = ThreadLocal.withInitial(() -> {
+        try {
+            return CertificateFactory.getInstance("X.509");
+        } catch (CertificateException e) {
+            throw new IllegalStateException("X.509 certificate factory is not available", e);
+        }
+    });
+
+    private CertParsingUtil() {
+    }
+
+    // Same as String.trim(), every byte up to and including a space is treated as whitespace
+    private static boolean isWhitespace(byte b) {
+        return (b & 0xff) <= ' ';
+    }
+
+    private static boolean startsWith(byte[] data, int offset, byte[] prefix) {
+        if (data.length - offset < prefix.length) return false;
+        for (int i = 0; i < prefix.length; i++) {
+            if (data[offset + i] != prefix[i]) return false;
+        }
+        return true;
+    }
+
+    // Position of the first occurrence of marker at or after from, -1 if there is none
+    private static int indexOf(byte[] data, byte[] marker, int from) {
+        for (int i = from; i <= data.length - marker.length; i++) {
+            if (startsWith(data, i, marker)) return i;
+        }
+        return -1;
+    }
+
+    // Splits a PEM bundle into one block per certificate.
+    // Content without any BEGIN marker is returned as a single block so that it is reported as an invalid PEM.
+    public static List<byte[]> splitPemBundle(byte[] data) {
+        List<byte[]> blocks = new ArrayList<>();
+        int begin = indexOf(data, BEGIN_MARKER, 0);
+        if (begin < 0) {
+            blocks.add(data);
+            return blocks;
+        }
+        while (begin >= 0) {
+            int end = indexOf(data, END_MARKER, begin + BEGIN_MARKER.length);
+            int blockEnd = end < 0 ? data.length : end + END_MARKER.length;
+            blocks.add(Arrays.copyOfRange(data, begin, blockEnd));
+            begin = indexOf(data, BEGIN_MARKER, blockEnd);
+        }
+        return blocks;
     }
 
-    public static boolean hasValidBase64Content(String input) {
+    // Decodes the Base64 body between the PEM markers in a single pass, skipping whitespace.
+    // Returns null if the body is not valid Base64.
+    private static byte[] decodeBase64Body(byte[] data, int from, int to) {
+        byte[] base64 = new byte[to - from];
+        int length = 0;
+        for (int i = from; i < to; i++) {
+            if (!isWhitespace(data[i])) base64[length++] = data[i];
+        }
         try {
-            String base64 = input
-                    .replace("-----BEGIN CERTIFICATE-----", "")
-                    .replace("-----END CERTIFICATE-----", "")
-                    .replaceAll("\\s", "");
-
-            Base64.getDecoder().decode(base64);
-            return true;
-        } catch (Exception ex) {
-            return false;
+            return Base64.getDecoder().decode(length == base64.length ? base64 : Arrays.copyOf(base64, length));
+        } catch (IllegalArgumentException ex) {
+            return null;
         }
     }
 
-    private static X509Certificate checkX509Certificate(String input) {
+    private static X509Certificate toX509Certificate(byte[] der) {
         try {
-            // Converting String to X509Certificate
-            CertificateFactory factory = CertificateFactory.getInstance("X.509");
-            ByteArrayInputStream inputStream = new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8));
-            return (X509Certificate) factory.generateCertificate(inputStream);
+            return (X509Certificate) X509_FACTORY.get().generateCertificate(new ByteArrayInputStream(der));
         } catch (Exception e) {
             return null;
         }
     }
 
+    public static DetailsDTO parseCertificate(byte[] fileData) throws CertificateParsingException {
+        // Trimming the content once by moving the boundaries instead of copying the data
+        int start = 0;
+        int end = fileData.length;
+        while (start < end && isWhitespace(fileData[start])) start++;
+        while (end > start && isWhitespace(fileData[end - 1])) end--;
+
+        int bodyStart = start + BEGIN_MARKER.length;
+        int bodyEnd = end - END_MARKER.length;
+        if (bodyEnd < bodyStart || !startsWith(fileData, start, BEGIN_MARKER) || !startsWith(fileData, bodyEnd, END_MARKER)) {
+            throw new InvalidCertificateFormatException("Invalid PEM format");
+        }
 
-    public static DetailsDTO parseCertificate(String fileData) throws CertificateParsingException {
-               if(hasValidPemMarkers(fileData)){
-                   if(hasValidBase64Content(fileData)){
-                        if(checkX509Certificate(fileData)!=null){
-                            X509Certificate certificate = checkX509Certificate(fileData);
-
-                            // Extracting certificate details
-                            // Getting Subject from the certificate and storing it in string format
-                            String subjectStr = certificate.getSubjectX500Principal().getName(X500Principal.RFC2253);
-
-                            // Extracting issuer details from the certificate and storing it in string format
-                            String issuerStr = certificate.getIssuerX500Principal().getName(X500Principal.RFC2253);
-
-                            // Extracting serial number details from the certificate
-                            String serialNumber = certificate.getSerialNumber().toString();
-
-                            // Get Subject Alternative Names if any
-                            Collection<List<?>> subjectAlternativeNames = certificate.getSubjectAlternativeNames();
-
-                            String sanString = "";
-                            if (subjectAlternativeNames != null) {
-                                sanString = subjectAlternativeNames.stream()
-                                        .map(list -> list.get(1))        // index 1 contains the SAN value
-                                        .map(Object::toString)
-                                        .collect(Collectors.joining("; "));
-                            }
-
-                            return DetailsDTO.builder()
-                                    .subject(subjectStr)
-                                    .issuedBy(issuerStr)
-                                    .serialNumber(serialNumber)
-                                    .version(certificate.getVersion())
-                                    .signatureAlgorithm(certificate.getSigAlgName())
-                                    .issuedDate(certificate.getNotBefore().toInstant().atZone(ZoneId.systemDefault()).toLocalDate())
-                                    .expiryDate(certificate.getNotAfter().toInstant().atZone(ZoneId.systemDefault()).toLocalDate())
-                                    .subjectAltName(sanString)
-                                    .build();
-                        }else{
-                            throw new InvalidCertificateFormatException("Given certificate is not a valid X509 certificate");
-                        }
-                   }else{
-                       throw new InvalidCertificateFormatException("File does not contain Base64 encoded data.");
-                   }
-               }else{
-                   throw new InvalidCertificateFormatException("Invalid PEM format");
-               }
+        byte[] der = decodeBase64Body(fileData, bodyStart, bodyEnd);
+        if (der == null) {
+            throw new InvalidCertificateFormatException("File does not contain Base64 encoded data.");
+        }
+
+        X509Certificate certificate = toX509Certificate(der);
+        if (certificate == null) {
+            throw new InvalidCertificateFormatException("Given certificate is not a valid X509 certificate");
+        }
+        return toDetails(certificate, fingerprint(der));
+    }
+
+    // SHA-256 of the DER encoding as lowercase hex, identifies the certificate content within a profile
+    public static String fingerprint(byte[] der) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(der));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
     }
-}
 
+    // Accepts fingerprints as printed by openssl/browsers ("AB:CD:..") as well as plain hex.
+    // Anything but a SHA-256 digest is rejected, it would not fit the column nor match a parsed certificate.
+    public static String normalizeFingerprint(String fingerprint) {
+        if (fingerprint == null || fingerprint.isBlank()) return null;
+        String normalized = fingerprint.replace(":", "").trim().toLowerCase(Locale.ROOT);
+        if (!SHA256_HEX.matcher(normalized).matches()) {
+            throw new InvalidRequestParameterException("Invalid fingerprint, expected a SHA-256 digest as 64 hex characters.");
+        }
+        return normalized;
+    }
+
+    private static DetailsDTO toDetails(X509Certificate certificate, String fingerprint) throws CertificateParsingException {
+        // Extracting certificate details
+        // Getting Subject from the certificate and storing it in string format
+        String subjectStr = certificate.getSubjectX500Principal().getName(X500Principal.RFC2253);
+
+        // Extracting issuer details from the certificate and storing it in string format
+        String issuerStr = certificate.getIssuerX500Principal().getName(X500Principal.RFC2253);
+
+        // Extracting serial number details from the certificate
+        String serialNumber = certificate.getSerialNumber().toString();
+
+        // Get Subject Alternative Names if any
+        Collection<List<?>> subjectAlternativeNames = certificate.getSubjectAlternativeNames();
+
+        String sanString = "";
+        if (subjectAlternativeNames != null) {
+            sanString = subjectAlternativeNames.stream()
+                    .map(list -> list.get(1))        // index 1 contains the SAN value
+                    .map(Object::toString)
+                    .collect(Collectors.joining("; "));
+        }
+
+        return DetailsDTO.builder()
+                .subject(subjectStr)
+                .issuedBy(issuerStr)
+                .serialNumber(serialNumber)
+                .version(certificate.getVersion())
+                .signatureAlgorithm(certificate.getSigAlgName())
+                .issuedDate(certificate.getNotBefore().toInstant().atZone(ZoneId.systemDefault()).toLocalDate())
+                .expiryDate(certificate.getNotAfter().toInstant().atZone(ZoneId.systemDefault()).toLocalDate())
+                .subjectAltName(sanString)
+                .fingerprint(fingerprint)
+                .build();
+    }
+}
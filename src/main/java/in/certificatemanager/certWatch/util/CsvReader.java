@@ -0,0 +1,65 @@
+package in.certificatemanager.certWatch.util;
+
+import in.certificatemanager.certWatch.customExceptions.InvalidRequestParameterException;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+// Reads RFC 4180 records one at a time. Fields in double quotes may contain commas, line breaks and doubled quotes,
+// lines may end with CRLF or LF. A leading byte order mark is skipped. The caller is expected to buffer the reader.
+public class CsvReader {
+
+    // Bounds the memory a single malformed field (e.g. an unclosed quote) can take
+    private static final int MAX_FIELD_LENGTH = 64 * 1024;
+
+    private final Reader reader;
+    private boolean started;
+
+    public CsvReader(Reader reader) {
+        this.reader = reader;
+    }
+
+    // Fields of the next record, null at the end of the input
+    public List<String> next() throws IOException {
+        int c = reader.read();
+        if (!started) {
+            started = true;
+            if (c == '\uFEFF') c = reader.read();
+        }
+        if (c < 0) return null;
+
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        while (true) {
+            if (field.length() > MAX_FIELD_LENGTH) {
+                throw new InvalidRequestParameterException("CSV field longer than " + MAX_FIELD_LENGTH + " characters.");
+            }
+            if (quoted) {
+                if (c < 0) throw new InvalidRequestParameterException("Unclosed quote in CSV input.");
+                if (c == '"') {
+                    c = reader.read();
+                    if (c != '"') {
+                        // Closing quote, the character after it is read as unquoted
+                        quoted = false;
+                        continue;
+                    }
+                }
+                field.append((char) c);
+            } else if (c < 0 || c == '\n') {
+                fields.add(field.toString());
+                return fields;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else if (c == '"' && field.isEmpty()) {
+                quoted = true;
+            } else if (c != '\r') {
+                field.append((char) c);
+            }
+            c = reader.read();
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package in.certificatemanager.certWatch.util;
+
+import in.certificatemanager.certWatch.customExceptions.InvalidRequestParameterException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+// Encodes the last seen key values of a page into an opaque, URL safe cursor and back
+public class CursorCodec {
+
+    private static final String SEPARATOR = "|";
+
+    private CursorCodec() {
+    }
+
+    // null values are encoded as empty parts
+    public static String encode(Object... values) {
+        StringBuilder cursor = new StringBuilder();
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) cursor.append(SEPARATOR);
+            if (values[i] != null) cursor.append(values[i]);
+        }
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(cursor.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    // Returns the parts of the cursor, empty parts are returned as null
+    public static String[] decode(String cursor, int expectedParts) {
+        try {
+            String decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            String[] parts = decoded.split("\\|", -1);
+            if (parts.length != expectedParts) throw new IllegalArgumentException("Unexpected number of cursor parts");
+            for (int i = 0; i < parts.length; i++) {
+                if (parts[i].isEmpty()) parts[i] = null;
+            }
+            return parts;
+        } catch (IllegalArgumentException e) {
+            throw new InvalidRequestParameterException("Invalid cursor.");
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package in.certificatemanager.certWatch.util;
+
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.context.request.WebRequest;
+
+import java.util.function.Supplier;
+
+// Conditional GET support for the list endpoints
+public class ETagUtil {
+
+    // Clients may keep the list but have to revalidate it on every use. Setting it here also keeps
+    // Spring Security from adding no-store, which would stop browsers from sending If-None-Match.
+    private static final CacheControl LIST_CACHE_CONTROL = CacheControl.noCache().cachePrivate();
+
+    private ETagUtil() {
+    }
+
+    public static String listETag(String listType, Long profileId, long version) {
+        return "\"" + listType + "-" + profileId + "-" + version + "\"";
+    }
+
+    // Answers 304 when If-None-Match matches the ETag, the body is only loaded otherwise.
+    // checkNotModified has already set the ETag header of the 304.
+    public static <T> ResponseEntity<T> conditionalGet(WebRequest request, String etag, Supplier<T> body) {
+        if (request.checkNotModified(etag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).cacheControl(LIST_CACHE_CONTROL).build();
+        }
+        return ResponseEntity.ok().eTag(etag).cacheControl(LIST_CACHE_CONTROL).body(body.get());
+    }
+}
@@ -0,0 +1,104 @@
+package in.certificatemanager.certWatch.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Minimal templates for the HTML emails. A template is parsed once into its literal text and {{placeholders}},
+// rendering appends the literals and the HTML escaped values to a buffer owned by the caller.
+public final class HtmlTemplate {
+
+    private static final String SECTION_START = "<!-- section: ";
+    private static final String SECTION_END = " -->";
+
+    // literals[i] is followed by the value of slots[i], the last literal closes the template
+    private final String[] literals;
+    private final int[] slots;
+    private final int arity;
+
+    private HtmlTemplate(String[] literals, int[] slots, int arity) {
+        this.literals = literals;
+        this.slots = slots;
+        this.arity = arity;
+    }
+
+    // Parses a template whose placeholders are among the given names, render takes the values in the same order.
+    // Unknown or unclosed placeholders fail here, at startup, instead of in a sent email.
+    public static HtmlTemplate compile(String text, String... names) {
+        List<String> literals = new ArrayList<>();
+        List<Integer> slots = new ArrayList<>();
+        int from = 0;
+        int open;
+        while ((open = text.indexOf("{{", from)) >= 0) {
+            int close = text.indexOf("}}", open + 2);
+            if (close < 0) throw new IllegalStateException("Unclosed placeholder at " + open);
+            String name = text.substring(open + 2, close).trim();
+            int slot = Arrays.asList(names).indexOf(name);
+            if (slot < 0) throw new IllegalStateException("Unknown placeholder {{" + name + "}}");
+            literals.add(text.substring(from, open));
+            slots.add(slot);
+            from = close + 2;
+        }
+        literals.add(text.substring(from));
+        return new HtmlTemplate(literals.toArray(String[]::new), slots.stream().mapToInt(Integer::intValue).toArray(), names.length);
+    }
+
+    // Reads a classpath resource made of sections, each one starting with a <!-- section: name --> line.
+    // Whitespace around a section is dropped so that sections can be rendered next to each other inline.
+    public static Map<String, String> loadSections(String location) {
+        String text;
+        try (InputStream in = HtmlTemplate.class.getClassLoader().getResourceAsStream(location)) {
+            if (in == null) throw new IllegalStateException("Template not found: " + location);
+            text = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        Map<String, String> sections = new LinkedHashMap<>();
+        int start = text.indexOf(SECTION_START);
+        while (start >= 0) {
+            int nameEnd = text.indexOf(SECTION_END, start);
+            String name = text.substring(start + SECTION_START.length(), nameEnd).trim();
+            int bodyStart = nameEnd + SECTION_END.length();
+            int next = text.indexOf(SECTION_START, bodyStart);
+            sections.put(name, text.substring(bodyStart, next < 0 ? text.length() : next).strip());
+            start = next;
+        }
+        return sections;
+    }
+
+    public void render(StringBuilder out, Object... values) {
+        if (values.length != arity) {
+            throw new IllegalArgumentException("Expected " + arity + " values but got " + values.length);
+        }
+        for (int i = 0; i < slots.length; i++) {
+            out.append(literals[i]);
+            escape(values[slots[i]], out);
+        }
+        out.append(literals[literals.length - 1]);
+    }
+
+    // Escapes character by character into the buffer, without an intermediate string.
+    // Safe for element content and quoted attribute values.
+    public static void escape(Object value, StringBuilder out) {
+        if (value == null) return;
+        CharSequence text = value instanceof CharSequence chars ? chars : value.toString();
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '&' -> out.append("&amp;");
+                case '<' -> out.append("&lt;");
+                case '>' -> out.append("&gt;");
+                case '"' -> out.append("&quot;");
+                case '\'' -> out.append("&#39;");
+                default -> out.append(c);
+            }
+        }
+    }
+}
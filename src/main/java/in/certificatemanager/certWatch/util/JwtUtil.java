@@ -3,12 +3,14 @@ package in.certificatemanager.certWatch.util;
 import io.jsonwebtoken.*;
 import io.jsonwebtoken.security.Keys;
 import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import javax.crypto.SecretKey;
 import java.nio.charset.StandardCharsets;
 import java.util.Date;
 
+@Slf4j
 @Component
 public class JwtUtil {
 
@@ -18,50 +20,60 @@ public class JwtUtil {
     @Value("${jwt.expiration}")
     private int jwtExpirationMs;
 
+    // Claim carrying the profile id, so that requests can be authenticated without looking up the profile
+    public static final String PROFILE_ID_CLAIM = "profileId";
+
     private SecretKey key;
 
-    // Initializes the key after the class is instantiated and the jwtSecret is injected,
-    // preventing the repeated creation of the key and enhancing performance
+    private JwtParser jwtParser;
+
+    // Initializes the key and the parser after the class is instantiated and the jwtSecret is injected,
+    // preventing their repeated creation and enhancing performance. JwtParser is immutable and thread safe.
     @PostConstruct
     public void init() {
         this.key = Keys.hmacShaKeyFor(jwtSecret.getBytes(StandardCharsets.UTF_8));
+        this.jwtParser = Jwts.parserBuilder().setSigningKey(key).build();
     }
 
     // Generate JWT token
-    public String generateToken(String username) {
+    public String generateToken(String username, Long profileId) {
         return Jwts.builder()
                 .setSubject(username)
+                .claim(PROFILE_ID_CLAIM, profileId)
                 .setIssuedAt(new Date())
                 .setExpiration(new Date((new Date()).getTime() + jwtExpirationMs))
                 .signWith(key, SignatureAlgorithm.HS256)
                 .compact();
     }
 
-    // Get username from JWT token
-    public String getUsernameFromToken(String token) {
-        return Jwts.parserBuilder()
-                .setSigningKey(key).build()
-                .parseClaimsJws(token)
-                .getBody()
-                .getSubject();
+    // Verifies the signature and the expiry once and returns the claims, or null if the token is invalid.
+    // An expired token is rethrown so that it can be reported as such.
+    public Claims parseValidClaims(String token) {
+        try {
+            return jwtParser.parseClaimsJws(token).getBody();
+        } catch (ExpiredJwtException e) {
+            throw e;
+        } catch (SecurityException e) {
+            log.warn("Invalid JWT signature: {}", e.getMessage());
+        } catch (MalformedJwtException e) {
+            log.debug("Invalid JWT token: {}", e.getMessage());
+        } catch (UnsupportedJwtException e) {
+            log.debug("JWT token is unsupported: {}", e.getMessage());
+        } catch (IllegalArgumentException e) {
+            log.debug("JWT claims string is empty: {}", e.getMessage());
+        } catch (JwtException e) {
+            log.debug("Invalid JWT token: {}", e.getMessage());
+        }
+        return null;
     }
 
     // Validate JWT token
     public boolean validateJwtToken(String token) {
         try {
-            Jwts.parserBuilder().setSigningKey(key).build().parseClaimsJws(token);
-            return true;
-        } catch (SecurityException e) {
-            System.out.println("Invalid JWT signature: " + e.getMessage());
-        } catch (MalformedJwtException e) {
-            System.out.println("Invalid JWT token: " + e.getMessage());
+            return parseValidClaims(token) != null;
         } catch (ExpiredJwtException e) {
-            System.out.println("JWT token is expired: " + e.getMessage());
-        } catch (UnsupportedJwtException e) {
-            System.out.println("JWT token is unsupported: " + e.getMessage());
-        } catch (IllegalArgumentException e) {
-            System.out.println("JWT claims string is empty: " + e.getMessage());
+            log.debug("JWT token is expired: {}", e.getMessage());
+            return false;
         }
-        return false;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,89 @@
+package in.certificatemanager.certWatch.util;
+
+import in.certificatemanager.certWatch.customExceptions.InvalidRequestParameterException;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+// Reminder thresholds are the days before expiry at which the owner of a certificate is reminded, stored as "90,60,30".
+// The date of the next reminder is precomputed per certificate, the daily job only reads certificates whose date has come.
+public class ReminderSchedule {
+
+    public static final String DEFAULT_THRESHOLDS = "90,60,30";
+
+    // Stored for certificates without an upcoming reminder, null is left for rows that were never scheduled
+    public static final LocalDate NEVER = LocalDate.of(9999, 12, 31);
+
+    private static final int MAX_THRESHOLDS = 10;
+    private static final int MAX_DAYS = 365;
+
+    private ReminderSchedule() {
+    }
+
+    // Validates user input and brings it into the stored form ("30, 90,60" -> "90,60,30"),
+    // null or blank input is returned as null so that the inherited thresholds apply
+    public static String normalize(String thresholds) {
+        if (thresholds == null || thresholds.isBlank()) return null;
+        List<Integer> days;
+        try {
+            days = Arrays.stream(thresholds.split(","))
+                    .map(String::trim)
+                    .map(Integer::parseInt)
+                    .distinct()
+                    .sorted(Comparator.reverseOrder())
+                    .toList();
+        } catch (NumberFormatException e) {
+            throw new InvalidRequestParameterException("Invalid reminder days, expected a comma separated list of numbers.");
+        }
+        if (days.size() > MAX_THRESHOLDS) {
+            throw new InvalidRequestParameterException("At most " + MAX_THRESHOLDS + " reminder days are allowed.");
+        }
+        if (days.get(days.size() - 1) < 0 || days.get(0) > MAX_DAYS) {
+            throw new InvalidRequestParameterException("Reminder days must be between 0 and " + MAX_DAYS + ".");
+        }
+        return days.stream().map(String::valueOf).collect(Collectors.joining(","));
+    }
+
+    // Thresholds of a stored value in descending order, null falls back to the defaults
+    public static List<Integer> parse(String thresholds) {
+        String value = thresholds == null ? DEFAULT_THRESHOLDS : thresholds;
+        return Arrays.stream(value.split(",")).map(Integer::valueOf).toList();
+    }
+
+    // Threshold whose window today falls in (the smallest one not after the days left), null if the certificate
+    // expired or is not yet within any threshold. Decides the heading a certificate is listed under in the reminder.
+    public static Integer currentThreshold(LocalDate expiryDate, List<Integer> thresholds, LocalDate today) {
+        if (expiryDate == null || expiryDate.isBefore(today)) return null;
+        for (int i = thresholds.size() - 1; i >= 0; i--) {
+            if (!expiryDate.minusDays(thresholds.get(i)).isAfter(today)) return thresholds.get(i);
+        }
+        return null;
+    }
+
+    // Date of the first reminder of a new or changed certificate. With catchUp a certificate that is already within a
+    // threshold is reminded today, otherwise only thresholds from today on are considered.
+    public static LocalDate nextReminder(LocalDate expiryDate, List<Integer> thresholds, LocalDate today, boolean catchUp) {
+        if (expiryDate == null || expiryDate.isBefore(today)) return NEVER;
+        if (catchUp && currentThreshold(expiryDate, thresholds, today) != null) return today;
+        for (Integer days : thresholds) {
+            LocalDate remindOn = expiryDate.minusDays(days);
+            if (!remindOn.isBefore(today)) return remindOn;
+        }
+        return NEVER;
+    }
+
+    // Date of the reminder following the one sent today for the given threshold, thresholds that passed while
+    // the job was not running are skipped since the reminder just sent already covered them
+    public static LocalDate nextReminderAfter(LocalDate expiryDate, List<Integer> thresholds, LocalDate today, int sentThreshold) {
+        if (expiryDate == null) return NEVER;
+        for (Integer days : thresholds) {
+            if (days >= sentThreshold) continue;
+            LocalDate remindOn = expiryDate.minusDays(days);
+            if (remindOn.isAfter(today)) return remindOn;
+        }
+        return NEVER;
+    }
+}
@@ -0,0 +1,42 @@
+package in.certificatemanager.certWatch.util;
+
+import java.util.concurrent.TimeUnit;
+
+// Token bucket allowing permitsPerSecond acquisitions per second on average and bursts of up to burstSize.
+// Waiting threads sleep outside the lock, which is cheap on virtual threads.
+public class TokenBucketRateLimiter {
+
+    private final double permitsPerNano;
+    private final double burstSize;
+    private double availableTokens;
+    private long lastRefillNanos;
+
+    public TokenBucketRateLimiter(double permitsPerSecond, int burstSize) {
+        if (permitsPerSecond <= 0 || burstSize < 1) {
+            throw new IllegalArgumentException("Rate and burst size must be positive");
+        }
+        this.permitsPerNano = permitsPerSecond / TimeUnit.SECONDS.toNanos(1);
+        this.burstSize = burstSize;
+        this.availableTokens = burstSize;
+        this.lastRefillNanos = System.nanoTime();
+    }
+
+    public void acquire() throws InterruptedException {
+        long waitNanos;
+        while ((waitNanos = tryAcquire()) > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+
+    // Takes a token and returns 0, or returns how long to wait until a token is available
+    private synchronized long tryAcquire() {
+        long now = System.nanoTime();
+        availableTokens = Math.min(burstSize, availableTokens + (now - lastRefillNanos) * permitsPerNano);
+        lastRefillNanos = now;
+        if (availableTokens >= 1) {
+            availableTokens -= 1;
+            return 0;
+        }
+        return Math.max(1, (long) Math.ceil((1 - availableTokens) / permitsPerNano));
+    }
+}
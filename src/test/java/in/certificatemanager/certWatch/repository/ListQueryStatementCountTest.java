@@ -0,0 +1,88 @@
+package in.certificatemanager.certWatch.repository;
+
+import in.certificatemanager.certWatch.dto.CategoryDTO;
+import in.certificatemanager.certWatch.dto.CertificateDTO;
+import in.certificatemanager.certWatch.entity.CategoryEntity;
+import in.certificatemanager.certWatch.entity.CertificateEntity;
+import in.certificatemanager.certWatch.entity.ProfileEntity;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// The certificate and category lists are read with one statement each, however many rows and categories they hold
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+class ListQueryStatementCountTest {
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private CertificateRepository certificateRepository;
+
+    @Autowired
+    private CategoryRepository categoryRepository;
+
+    private Statistics statistics;
+    private Long profileId;
+
+    @BeforeEach
+    void setUp() {
+        ProfileEntity profile = entityManager.persist(ProfileEntity.builder()
+                .fullName("Test User").email("t@example.com").password("x").isActive(true).build());
+        profileId = profile.getId();
+        for (int c = 0; c < 3; c++) {
+            CategoryEntity category = entityManager.persist(CategoryEntity.builder()
+                    .name("Category " + c).icon("i").profile(profile).build());
+            for (int i = 0; i < 4; i++) {
+                entityManager.persist(CertificateEntity.builder()
+                        .subject("CN=c" + c + "-" + i).issuedBy("CN=issuer").serialNumber(String.valueOf(i)).version(3)
+                        .expiryDate(LocalDate.now().plusDays(30 + i)).isArchived(i == 0)
+                        .profile(profile).category(category).build());
+            }
+        }
+        entityManager.flush();
+        entityManager.clear();
+
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+    }
+
+    @Test
+    void allCertificatesAreReadWithOneStatement() {
+        List<CertificateDTO> certificates = certificateRepository.findDTOsByProfileId(profileId);
+
+        assertThat(certificates).hasSize(12);
+        assertThat(certificates).allSatisfy(certificate -> assertThat(certificate.getCategoryId()).isNotNull());
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+    }
+
+    @Test
+    void unarchivedCertificatesAreReadWithOneStatement() {
+        List<CertificateDTO> certificates = certificateRepository.findDTOsByProfileIdAndArchived(profileId, false);
+
+        assertThat(certificates).hasSize(9);
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+    }
+
+    @Test
+    void categoriesAreReadWithOneStatement() {
+        List<CategoryDTO> categories = categoryRepository.findDTOsByProfileId(profileId);
+
+        assertThat(categories).hasSize(3);
+        assertThat(categories).allSatisfy(category -> assertThat(category.getProfileId()).isEqualTo(profileId));
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+    }
+}
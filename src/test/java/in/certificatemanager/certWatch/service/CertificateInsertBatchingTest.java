@@ -0,0 +1,115 @@
+package in.certificatemanager.certWatch.service;
+
+import in.certificatemanager.certWatch.config.IdSequences;
+import in.certificatemanager.certWatch.dto.SpreadsheetImportResultDTO;
+import in.certificatemanager.certWatch.entity.CategoryEntity;
+import in.certificatemanager.certWatch.entity.ProfileEntity;
+import in.certificatemanager.certWatch.repository.CategoryRepository;
+import in.certificatemanager.certWatch.repository.ProfileRepository;
+import jakarta.persistence.EntityManagerFactory;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.SpringBootConfiguration;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.mock.web.MockMultipartFile;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+// Inserts CERTIFICATES certificates through the spreadsheet import, once with JDBC batching switched off and once with
+// the configured batch size, and logs the throughput of both. Each context imports the file once to warm up before the
+// import that is measured. Hibernate prepares the insert statement once per JDBC batch, so the prepared statement count
+// shows whether the inserts went out in batches.
+@Slf4j
+class CertificateInsertBatchingTest {
+
+    private static final int CERTIFICATES = 2000;
+    private static final int JDBC_BATCH_SIZE = 50;
+
+    @SpringBootConfiguration
+    @EnableAutoConfiguration
+    @EntityScan("in.certificatemanager.certWatch.entity")
+    @EnableJpaRepositories("in.certificatemanager.certWatch.repository")
+    @Import({SpreadsheetImportService.class, ReminderScheduleService.class})
+    static class ImportContext {
+    }
+
+    @Test
+    void insertsAreSentInJdbcBatches() throws Exception {
+        Run unbatched = importCertificates(0);
+        Run batched = importCertificates(JDBC_BATCH_SIZE);
+
+        log.info("Import of {} certificates: {} per second and {} statements without JDBC batching, "
+                        + "{} per second and {} statements with batches of {}", CERTIFICATES,
+                unbatched.perSecond(), unbatched.preparedStatements(), batched.perSecond(), batched.preparedStatements(),
+                JDBC_BATCH_SIZE);
+
+        assertThat(unbatched.inserts()).isEqualTo(CERTIFICATES);
+        assertThat(batched.inserts()).isEqualTo(CERTIFICATES);
+        // One statement per row without batching, with batching one per batch next to the pooled sequence calls
+        assertThat(unbatched.preparedStatements()).isGreaterThanOrEqualTo(CERTIFICATES);
+        long batches = CERTIFICATES / JDBC_BATCH_SIZE;
+        long sequenceCalls = CERTIFICATES / IdSequences.ALLOCATION_SIZE;
+        assertThat(batched.preparedStatements()).isLessThanOrEqualTo(batches + sequenceCalls + 10);
+    }
+
+    private record Run(long inserts, long preparedStatements, long nanos) {
+        long perSecond() {
+            return CERTIFICATES * 1_000_000_000L / nanos;
+        }
+    }
+
+    private static Run importCertificates(int jdbcBatchSize) throws Exception {
+        // The current profile comes from the security context, which is not started here
+        ProfileService profileService = mock(ProfileService.class);
+        try (ConfigurableApplicationContext context = new SpringApplicationBuilder(ImportContext.class)
+                .web(WebApplicationType.NONE)
+                .initializers(applicationContext -> applicationContext.getBeanFactory()
+                        .registerSingleton("profileService", profileService))
+                .run("--spring.profiles.active=test",
+                        "--spring.datasource.url=jdbc:h2:mem:insert-batching-" + jdbcBatchSize + ";DB_CLOSE_DELAY=-1",
+                        "--spring.datasource.username=sa",
+                        "--spring.datasource.password=",
+                        "--spring.jpa.hibernate.ddl-auto=update",
+                        "--spring.jpa.properties.hibernate.jdbc.batch_size=" + jdbcBatchSize,
+                        "--spring.jpa.properties.hibernate.generate_statistics=true")) {
+            ProfileEntity profile = context.getBean(ProfileRepository.class).save(ProfileEntity.builder()
+                    .fullName("Test User").email("t@example.com").password("x").isActive(true).build());
+            context.getBean(CategoryRepository.class).save(CategoryEntity.builder()
+                    .name("Web").icon("i").profile(profile).build());
+            when(profileService.getCurrentProfileReference()).thenReturn(profile);
+
+            StringBuilder csv = new StringBuilder("Subject,Category,Expiry Date\n");
+            LocalDate expiry = LocalDate.now().plusDays(30);
+            for (int i = 0; i < CERTIFICATES; i++) {
+                csv.append("CN=host-").append(i).append(".example.com,Web,").append(expiry.plusDays(i % 365)).append('\n');
+            }
+            MockMultipartFile file = new MockMultipartFile("file", "certificates.csv", "text/csv",
+                    csv.toString().getBytes(StandardCharsets.UTF_8));
+
+            SpreadsheetImportService importService = context.getBean(SpreadsheetImportService.class);
+            importService.importSpreadsheet(file, null);
+
+            Statistics statistics = context.getBean(EntityManagerFactory.class).unwrap(SessionFactory.class).getStatistics();
+            statistics.clear();
+            long start = System.nanoTime();
+            SpreadsheetImportResultDTO result = importService.importSpreadsheet(file, null);
+            long nanos = System.nanoTime() - start;
+
+            assertThat(result.getImported()).isEqualTo(CERTIFICATES);
+            return new Run(statistics.getEntityInsertCount(), statistics.getPrepareStatementCount(), nanos);
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package in.certificatemanager.certWatch.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import in.certificatemanager.certWatch.config.HttpClientConfig;
+import in.certificatemanager.certWatch.dto.EmailDTO;
+import in.certificatemanager.certWatch.entity.EmailOutboxEntity;
+import in.certificatemanager.certWatch.repository.EmailOutboxRepository;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.boot.SpringBootConfiguration;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// The outbox worker against a stub of the Brevo API on a random port: emails without attachments go out as one
+// messageVersions request, a rejected batch falls back to single sends and a provider failure fails the whole batch.
+class EmailOutboxDeliveryTest {
+
+    private static final int EMAILS = 5;
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    // Requests the stub received, and the status it answers a request with
+    private static final List<JsonNode> requests = Collections.synchronizedList(new ArrayList<>());
+    private static volatile Function<JsonNode, Integer> responder;
+
+    private static HttpServer brevo;
+    private static ConfigurableApplicationContext context;
+    private static EmailOutboxService emailOutboxService;
+    private static EmailOutboxRepository emailOutboxRepository;
+
+    @SpringBootConfiguration
+    @EnableAutoConfiguration
+    @EntityScan("in.certificatemanager.certWatch.entity")
+    @EnableJpaRepositories("in.certificatemanager.certWatch.repository")
+    @Import({HttpClientConfig.class, EmailService.class, EmailDispatcher.class, EmailOutboxService.class})
+    static class OutboxContext {
+    }
+
+    @BeforeAll
+    static void start() throws IOException {
+        brevo = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        brevo.createContext("/v3/smtp/email", EmailOutboxDeliveryTest::handle);
+        brevo.start();
+
+        context = new SpringApplicationBuilder(OutboxContext.class)
+                .web(WebApplicationType.NONE)
+                .run("--spring.profiles.active=test",
+                        "--spring.datasource.url=jdbc:h2:mem:email-outbox;DB_CLOSE_DELAY=-1",
+                        "--spring.datasource.username=sa",
+                        "--spring.datasource.password=",
+                        "--spring.jpa.hibernate.ddl-auto=update",
+                        "--brevo.api.key=test-key",
+                        "--brevo.sender.email=certwatch@example.com",
+                        "--brevo.sender.name=CertWatch",
+                        "--brevo.api.url=http://localhost:" + brevo.getAddress().getPort() + "/v3/smtp/email",
+                        "--certwatch.email.dispatch.batch-size=" + EMAILS,
+                        "--certwatch.email.dispatch.rate-per-second=1000",
+                        "--certwatch.email.dispatch.burst=1000",
+                        // Failures of the stub must not open the circuit for the following tests
+                        "--certwatch.http.email.circuit.failure-threshold=1000");
+        emailOutboxService = context.getBean(EmailOutboxService.class);
+        emailOutboxRepository = context.getBean(EmailOutboxRepository.class);
+    }
+
+    @AfterAll
+    static void stop() {
+        if (context != null) context.close();
+        if (brevo != null) brevo.stop(0);
+    }
+
+    @BeforeEach
+    void reset() {
+        emailOutboxRepository.deleteAll();
+        requests.clear();
+    }
+
+    @Test
+    void emailsGoOutAsOneBatchRequest() {
+        responder = request -> 201;
+        enqueueEmails();
+
+        emailOutboxService.drainOutbox();
+
+        assertThat(requests).hasSize(1);
+        JsonNode versions = requests.get(0).get("messageVersions");
+        assertThat(versions).hasSize(EMAILS);
+        assertThat(versions.findValuesAsText("email")).containsExactlyInAnyOrder(recipients());
+        assertThat(requests.get(0).get("sender").get("email").asText()).isEqualTo("certwatch@example.com");
+        assertThat(statusByRecipient()).allSatisfy((recipient, status) -> assertThat(status).isEqualTo(EmailOutboxEntity.Status.SENT));
+    }
+
+    @Test
+    void rejectedBatchFallsBackToSingleSends() {
+        // The batch is rejected because of one recipient, which is also rejected on its own
+        responder = request -> request.has("messageVersions") || recipientOf(request).equals("user2@example.com") ? 400 : 201;
+        enqueueEmails();
+
+        emailOutboxService.drainOutbox();
+
+        assertThat(requests).hasSize(1 + EMAILS);
+        assertThat(requests.subList(1, requests.size())).allSatisfy(request -> assertThat(request.has("messageVersions")).isFalse());
+        Map<String, EmailOutboxEntity> emails = emailsByRecipient();
+        emails.forEach((recipient, email) -> {
+            if (recipient.equals("user2@example.com")) {
+                assertThat(email.getStatus()).isEqualTo(EmailOutboxEntity.Status.PENDING);
+                assertThat(email.getAttempts()).isEqualTo(1);
+                assertThat(email.getLastError()).contains("400");
+            } else {
+                assertThat(email.getStatus()).isEqualTo(EmailOutboxEntity.Status.SENT);
+            }
+        });
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {429, 500, 503})
+    void providerFailureFailsTheWholeBatch(int status) {
+        responder = request -> status;
+        enqueueEmails();
+
+        emailOutboxService.drainOutbox();
+
+        // No single sends, the emails are retried by the outbox later on. The HTTP client itself may repeat the
+        // batch request once for 429 and 503.
+        assertThat(requests).isNotEmpty().allSatisfy(request -> assertThat(request.get("messageVersions")).hasSize(EMAILS));
+        assertThat(emailsByRecipient().values()).allSatisfy(email -> {
+            assertThat(email.getStatus()).isEqualTo(EmailOutboxEntity.Status.PENDING);
+            assertThat(email.getAttempts()).isEqualTo(1);
+            assertThat(email.getLastError()).contains(String.valueOf(status));
+        });
+    }
+
+    private static void enqueueEmails() {
+        for (String recipient : recipients()) {
+            emailOutboxService.enqueue(EmailDTO.builder()
+                    .to(recipient)
+                    .subject("Certificates expiring soon")
+                    .body("<p>Hello " + recipient + "</p>")
+                    .build(), null);
+        }
+    }
+
+    private static String[] recipients() {
+        String[] recipients = new String[EMAILS];
+        for (int i = 0; i < EMAILS; i++) recipients[i] = "user" + i + "@example.com";
+        return recipients;
+    }
+
+    private static Map<String, EmailOutboxEntity> emailsByRecipient() {
+        return emailOutboxRepository.findAll().stream()
+                .collect(Collectors.toMap(EmailOutboxEntity::getRecipient, Function.identity()));
+    }
+
+    private static Map<String, EmailOutboxEntity.Status> statusByRecipient() {
+        return emailOutboxRepository.findAll().stream()
+                .collect(Collectors.toMap(EmailOutboxEntity::getRecipient, EmailOutboxEntity::getStatus));
+    }
+
+    private static String recipientOf(JsonNode request) {
+        return request.get("to").get(0).get("email").asText();
+    }
+
+    private static void handle(HttpExchange exchange) throws IOException {
+        JsonNode request = MAPPER.readTree(exchange.getRequestBody());
+        requests.add(request);
+        int status = responder.apply(request);
+        byte[] body = (status < 300 ? "{\"messageId\":\"<stub>\"}" : "{\"code\":\"stub_error\"}").getBytes();
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package in.certificatemanager.certWatch.service;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.SpringBootConfiguration;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Two application contexts with their own node ids share one embedded database, as two instances share the
+// production database. Only the job coordination services and the JPA setup are started.
+class JobCoordinationTest {
+
+    private static final String DATABASE_URL = "jdbc:h2:mem:job-coordination;DB_CLOSE_DELAY=-1";
+
+    private static ConfigurableApplicationContext nodeA;
+    private static ConfigurableApplicationContext nodeB;
+
+    @SpringBootConfiguration
+    @EnableAutoConfiguration
+    @EntityScan("in.certificatemanager.certWatch.entity")
+    @EnableJpaRepositories("in.certificatemanager.certWatch.repository")
+    @Import({JobLockService.class, JobPartitionService.class, JobRunService.class})
+    static class JobsContext {
+    }
+
+    @BeforeAll
+    static void startNodes() {
+        nodeA = startNode("node-a");
+        nodeB = startNode("node-b");
+    }
+
+    @AfterAll
+    static void stopNodes() {
+        if (nodeB != null) nodeB.close();
+        if (nodeA != null) nodeA.close();
+    }
+
+    private static ConfigurableApplicationContext startNode(String nodeId) {
+        return new SpringApplicationBuilder(JobsContext.class)
+                .web(WebApplicationType.NONE)
+                .run("--spring.profiles.active=test",
+                        "--spring.datasource.url=" + DATABASE_URL,
+                        "--spring.datasource.username=sa",
+                        "--spring.datasource.password=",
+                        "--spring.jpa.hibernate.ddl-auto=update",
+                        "--certwatch.jobs.node-id=" + nodeId);
+    }
+
+    @Test
+    void onlyOneNodeHoldsTheLock() throws Exception {
+        CyclicBarrier start = new CyclicBarrier(2);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger running = new AtomicInteger();
+        Runnable task = () -> {
+            running.incrementAndGet();
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        };
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            List<Future<Boolean>> attempts = new ArrayList<>();
+            for (ConfigurableApplicationContext node : List.of(nodeA, nodeB)) {
+                JobLockService jobLockService = node.getBean(JobLockService.class);
+                attempts.add(executor.submit(() -> {
+                    start.await();
+                    return jobLockService.runLocked("lock-test", Duration.ofMinutes(1), Duration.ZERO, task);
+                }));
+            }
+            // The node that did not get the lock returns right away, the other one waits in its task
+            while (attempts.stream().noneMatch(Future::isDone)) Thread.sleep(10);
+            release.countDown();
+
+            int ran = 0;
+            for (Future<Boolean> attempt : attempts) {
+                if (attempt.get(10, TimeUnit.SECONDS)) ran++;
+            }
+            assertThat(ran).isEqualTo(1);
+            assertThat(running.get()).isEqualTo(1);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void lockLeaseCannotBeExtendedAfterAnotherNodeTookItOver() throws Exception {
+        JobLockService lockA = nodeA.getBean(JobLockService.class);
+        JobLockService lockB = nodeB.getBean(JobLockService.class);
+        AtomicBoolean takenOver = new AtomicBoolean();
+        AtomicBoolean extendedAfterTakeOver = new AtomicBoolean(true);
+
+        boolean ranOnA = lockA.runLocked("lease-test", Duration.ofMillis(1), Duration.ZERO, lease -> {
+            assertThat(lease.extend()).isTrue();
+            sleep(50);
+            // The lease of A ran out without an extension, B takes the lock over
+            takenOver.set(lockB.runLocked("lease-test", Duration.ofMinutes(1), Duration.ZERO, () -> { }));
+            extendedAfterTakeOver.set(lease.extend());
+        });
+
+        assertThat(ranOnA).isTrue();
+        assertThat(takenOver).isTrue();
+        assertThat(extendedAfterTakeOver).isFalse();
+    }
+
+    @Test
+    void nodesClaimDisjointPartitions() throws Exception {
+        LocalDate runDate = LocalDate.now();
+        CyclicBarrier start = new CyclicBarrier(2);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            List<Future<Set<Integer>>> claims = new ArrayList<>();
+            for (ConfigurableApplicationContext node : List.of(nodeA, nodeB)) {
+                JobPartitionService partitions = node.getBean(JobPartitionService.class);
+                claims.add(executor.submit(() -> {
+                    start.await();
+                    partitions.createPartitions("partition-test", runDate, 8, 800);
+                    Set<Integer> claimed = new HashSet<>();
+                    Optional<JobPartitionService.Partition> partition;
+                    while ((partition = partitions.claimNext("partition-test", runDate, Duration.ofMinutes(1))).isPresent()) {
+                        assertThat(claimed.add(partition.get().partitionNo())).isTrue();
+                        sleep(5);
+                    }
+                    return claimed;
+                }));
+            }
+            Set<Integer> claimedByA = claims.get(0).get(30, TimeUnit.SECONDS);
+            Set<Integer> claimedByB = claims.get(1).get(30, TimeUnit.SECONDS);
+
+            assertThat(claimedByA).doesNotContainAnyElementsOf(claimedByB);
+            Set<Integer> all = new HashSet<>(claimedByA);
+            all.addAll(claimedByB);
+            assertThat(all).containsExactlyInAnyOrder(0, 1, 2, 3, 4, 5, 6, 7);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void partitionLeaseCannotBeExtendedAfterAnotherNodeClaimedIt() {
+        LocalDate runDate = LocalDate.now();
+        JobPartitionService partitionsA = nodeA.getBean(JobPartitionService.class);
+        JobPartitionService partitionsB = nodeB.getBean(JobPartitionService.class);
+        partitionsA.createPartitions("partition-lease-test", runDate, 1, 10);
+
+        JobPartitionService.Partition claimedByA = partitionsA.claimNext("partition-lease-test", runDate, Duration.ofMillis(1)).orElseThrow();
+        sleep(50);
+        JobPartitionService.Partition claimedByB = partitionsB.claimNext("partition-lease-test", runDate, Duration.ofMinutes(1)).orElseThrow();
+
+        assertThat(claimedByB.id()).isEqualTo(claimedByA.id());
+        assertThat(partitionsA.leaseOf(claimedByA, Duration.ofMinutes(1)).extend()).isFalse();
+        assertThat(partitionsB.leaseOf(claimedByB, Duration.ofMinutes(1)).extend()).isTrue();
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package in.certificatemanager.certWatch.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+// Render cost of the reminder digests per 1k digests of 3 tables with 5 rows each.
+// Opt-in: mvn test -Pbenchmark
+@Slf4j
+@Tag("benchmark")
+class ReminderRenderBenchmarkTest {
+
+    private static final int DIGESTS = 1000;
+    private static final int WARMUP_ROUNDS = 5;
+    private static final int MEASURED_ROUNDS = 5;
+
+    @Test
+    void rendersThousandDigests() {
+        List<SortedMap<Integer, List<NotificationService.ExpiryEntry>>> digests = new ArrayList<>(DIGESTS);
+        for (int d = 0; d < DIGESTS; d++) {
+            SortedMap<Integer, List<NotificationService.ExpiryEntry>> byThreshold = new TreeMap<>();
+            for (int threshold : new int[]{7, 30, 60}) {
+                List<NotificationService.ExpiryEntry> entries = new ArrayList<>();
+                for (int row = 0; row < 5; row++) {
+                    entries.add(new NotificationService.ExpiryEntry("CN=host-" + d + "-" + row + ".example.com, O=<Example & Co>",
+                            LocalDate.of(2026, 1, 1).plusDays(threshold + row)));
+                }
+                byThreshold.put(threshold, entries);
+            }
+            digests.add(byThreshold);
+        }
+
+        StringBuilder html = new StringBuilder(8192);
+        for (int round = 0; round < WARMUP_ROUNDS; round++) renderAll(html, digests);
+
+        long best = Long.MAX_VALUE;
+        long chars = 0;
+        for (int round = 0; round < MEASURED_ROUNDS; round++) {
+            long start = System.nanoTime();
+            chars = renderAll(html, digests);
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        log.info("Reminder render: {} ms per {} digests ({} chars)", String.format("%.1f", best / 1e6), DIGESTS, chars);
+    }
+
+    private static long renderAll(StringBuilder html, List<SortedMap<Integer, List<NotificationService.ExpiryEntry>>> digests) {
+        long chars = 0;
+        for (SortedMap<Integer, List<NotificationService.ExpiryEntry>> byThreshold : digests) {
+            html.setLength(0);
+            NotificationService.renderReminder(html, "Test User", byThreshold, "https://app.example.com");
+            chars += html.length();
+        }
+        return chars;
+    }
+}
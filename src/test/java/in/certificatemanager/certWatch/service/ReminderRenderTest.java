@@ -0,0 +1,32 @@
+package in.certificatemanager.certWatch.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// The reminder digest is assembled from precompiled templates, values are HTML escaped as they are appended
+class ReminderRenderTest {
+
+    @Test
+    void escapesNameAndSubjects() {
+        SortedMap<Integer, List<NotificationService.ExpiryEntry>> byThreshold = new TreeMap<>();
+        byThreshold.put(30, List.of(new NotificationService.ExpiryEntry("CN=host.example.com, O=<Example & Co>",
+                LocalDate.of(2026, 2, 1))));
+        byThreshold.put(7, List.of(new NotificationService.ExpiryEntry("CN=\"quoted\"", LocalDate.of(2026, 1, 8))));
+
+        StringBuilder html = new StringBuilder();
+        NotificationService.renderReminder(html, "A <b>", byThreshold, "https://app.example.com");
+
+        assertThat(html).contains("A &lt;b&gt;").doesNotContain("A <b>");
+        assertThat(html).contains("&lt;Example &amp; Co&gt;").doesNotContain("<Example");
+        assertThat(html).doesNotContain("\"quoted\"");
+        assertThat(html).contains("2026-02-01").contains("https://app.example.com");
+        // Thresholds are listed and tabled in ascending order
+        assertThat(html.indexOf("2026-01-08")).isLessThan(html.indexOf("2026-02-01"));
+    }
+}